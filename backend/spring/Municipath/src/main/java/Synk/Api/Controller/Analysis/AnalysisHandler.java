@@ -1,101 +1,350 @@
 package Synk.Api.Controller.Analysis;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
 import Synk.Api.Controller.MuniciPathMediator;
 import Synk.Api.Model.MetaData;
 import Synk.Api.Model.Analysis.Analysis;
+import Synk.Api.Model.Analysis.MonthStats;
+import Synk.Api.Model.Analysis.MonthStatsRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
 @Service
 public class AnalysisHandler {
+
+	/**
+	 * posti delle classifiche
+	 */
+	@Value("${municipath.analysis.top-size:5}")
+	private int topSize;
+	/**
+	 * thread che analizzano i mesi in parallelo: 0 per usarne uno
+	 * per processore, 1 per analizzarli uno dopo l'altro
+	 */
+	@Value("${municipath.analysis.parallelism:0}")
+	private int parallelism;
+	private ForkJoinPool pool;
 	
+	/**
+	 * analisi gia' calcolate e versione dei dati di ogni comune.
+	 * la versione cresce quando un contenuto del comune viene
+	 * pubblicato, eliminato o votato, e ogni viewThreshold
+	 * visualizzazioni: un'analisi di una versione precedente
+	 * viene ancora restituita, mentre in sottofondo se ne
+	 * calcola una nuova
+	 */
+	private final Map<CacheKey, CompletableFuture<CachedAnalysis>> cache;
+	private final Map<String, CityVersion> versions;
+	@Value("${municipath.analysis.view-threshold:100}")
+	private long viewThreshold;
+	private ExecutorService refresher;
+
+	@Autowired
+	private MonthStatsRepository statsRepository;
 	private DataMonthPartitioner partitioner;
-	private DirectorAnalyzer director;
-	private PublicationMonthAnalyzer publAnalyzer;
-	private ViewMonthAnalyzer viewAnalyzer;
-	private VoteAverageMonthAnalyzer voteAveAnalyzer;
-	private TopFiveContributorMonthAnalyzer TFCAnalyzer;
-	private TopFiveLikedMonthAnalyzer TFLAnalyzer;
-	private TopFiveViewedMonthAnalyzer TFVAnalyzer;
 	private MuniciPathMediator mediator;
-	
+
 	public AnalysisHandler() {
 		this.partitioner = new DataMonthPartitioner();
-		this.director = new DirectorAnalyzer();
-		this.publAnalyzer = new PublicationMonthAnalyzer();
-		this.viewAnalyzer = new ViewMonthAnalyzer();
-		this.voteAveAnalyzer = new VoteAverageMonthAnalyzer();
-		this.TFCAnalyzer = new TopFiveContributorMonthAnalyzer();
-		this.TFLAnalyzer = new TopFiveLikedMonthAnalyzer();
-		this.TFVAnalyzer = new TopFiveViewedMonthAnalyzer();
+		this.cache = new ConcurrentHashMap<>();
+		this.versions = new ConcurrentHashMap<>();
 	}
-	
+
 	public void setMediator(MuniciPathMediator mediator) {
 		this.mediator = mediator;
 	}
 	
+	@PostConstruct
+	public void startPool() {
+		int threads = this.parallelism > 0 ? this.parallelism : Runtime.getRuntime().availableProcessors();
+		if(threads > 1)
+			this.pool = new ForkJoinPool(threads);
+		this.refresher = Executors.newFixedThreadPool(2, r -> {
+			Thread t = new Thread(r, "analysis-refresh");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+	
+	@PreDestroy
+	public void stopPool() {
+		if(this.pool != null)
+			this.pool.shutdownNow();
+		if(this.refresher != null)
+			this.refresher.shutdownNow();
+	}
+
 	/**
-	 * metodo per ottenre le analisi del comune
+	 * metodo per ottenre le analisi del comune negli ultimi mesi,
+	 * dal piu' vecchio al mese corrente. la stessa analisi viene
+	 * calcolata una volta sola finche' i dati del comune non
+	 * cambiano; dopo un cambiamento viene restituita quella
+	 * precedente mentre la nuova si calcola in sottofondo
 	 * @param cityId id del comune
 	 * @param months numero di mesi da controllare
 	 * @param onlyUsers se ignorare i dati dello staff del comune
 	 * @return dati di analisi
 	 */
-	public synchronized Analysis getAnalysis(String cityId, int months, boolean onlyUsers) {
-		if(months < 1 || months > 12 || cityId == null)
+	public Analysis getAnalysis(String cityId, int months, boolean onlyUsers) {
+		if(months < 1 || months > 12 || cityId == null || !this.mediator.checkCity(cityId))
 			return null;
-		List<MetaData> data = this.mediator.getDataForAnalysis(cityId, months, onlyUsers);
-		return getAnalysis(data, months);
+		CacheKey key = new CacheKey(cityId, months, onlyUsers, YearMonth.now());
+		while(true) {
+			CompletableFuture<CachedAnalysis> current = this.cache.get(key);
+			if(current == null) {
+				CompletableFuture<CachedAnalysis> loading = new CompletableFuture<>();
+				if(this.cache.putIfAbsent(key, loading) == null)
+					return load(key, loading).analysis();
+				continue;
+			}
+			CachedAnalysis cached = current.join();
+			if(cached == null) {
+				this.cache.remove(key, current);
+				continue;
+			}
+			if(cached.version() < versionOf(cityId).version.get())
+				refresh(key, current, cached);
+			return cached.analysis();
+		}
 	}
-	
+
+	/**
+	 * calcola un'analisi non ancora presente e la pubblica
+	 * a chi la sta aspettando. se il calcolo fallisce la
+	 * chiave viene liberata e l'errore arriva al chiamante
+	 * @param key analisi richiesta
+	 * @param loading calcolo registrato per la chiave
+	 * @return analisi calcolata
+	 */
+	private CachedAnalysis load(CacheKey key, CompletableFuture<CachedAnalysis> loading) {
+		this.cache.keySet().removeIf(k -> !k.month().equals(key.month()));
+		try {
+			CachedAnalysis cached = compute(key);
+			loading.complete(cached);
+			return cached;
+		} catch(RuntimeException e) {
+			this.cache.remove(key, loading);
+			loading.complete(null);
+			throw e;
+		}
+	}
+
+	/**
+	 * ricalcola in sottofondo un'analisi non piu' aggiornata,
+	 * se non lo sta gia' facendo un'altra richiesta
+	 * @param key analisi da ricalcolare
+	 * @param current analisi presente
+	 * @param cached suo valore
+	 */
+	private void refresh(CacheKey key, CompletableFuture<CachedAnalysis> current, CachedAnalysis cached) {
+		if(!cached.refreshing().compareAndSet(false, true))
+			return;
+		try {
+			this.refresher.execute(() -> {
+				try {
+					this.cache.replace(key, current, CompletableFuture.completedFuture(compute(key)));
+				} finally {
+					cached.refreshing().set(false);
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			cached.refreshing().set(false);
+		}
+	}
+
+	private CachedAnalysis compute(CacheKey key) {
+		long version = versionOf(key.cityId()).version.get();
+		return new CachedAnalysis(analyze(key.cityId(), key.months(), key.onlyUsers()),
+				version, new AtomicBoolean());
+	}
+
+	private CityVersion versionOf(String cityId) {
+		return this.versions.computeIfAbsent(cityId, c -> new CityVersion());
+	}
+
+	/**
+	 * segnala che un contenuto del comune e' stato
+	 * pubblicato, eliminato o votato
+	 * @param cityId id del comune
+	 */
+	public void contentChanged(String cityId) {
+		versionOf(cityId).version.incrementAndGet();
+	}
+
+	/**
+	 * segnala una visualizzazione di un contenuto del comune.
+	 * le analisi vengono ricalcolate solo ogni viewThreshold
+	 * visualizzazioni
+	 * @param cityId id del comune
+	 */
+	public void contentViewed(String cityId) {
+		CityVersion city = versionOf(cityId);
+		if(city.views.incrementAndGet() % this.viewThreshold == 0)
+			city.version.incrementAndGet();
+	}
+
+	/**
+	 * calcola le analisi del comune. i mesi conclusi vengono
+	 * letti dalle statistiche salvate; solo quelli non ancora
+	 * salvati e il mese corrente vengono calcolati dai contenuti.
+	 * ogni analisi ha il proprio stato, quindi piu' analisi
+	 * possono essere fatte insieme
+	 * @param cityId id del comune
+	 * @param months numero di mesi da controllare
+	 * @param onlyUsers se ignorare i dati dello staff del comune
+	 * @return dati di analisi
+	 */
+	private Analysis analyze(String cityId, int months, boolean onlyUsers) {
+		YearMonth current = YearMonth.now(), first = current.minusMonths(months - 1);
+		Map<YearMonth, MonthStats> stored = new HashMap<>();
+		this.statsRepository.findAllById(IntStream.range(0, months - 1)
+				.mapToObj(i -> MonthStats.idOf(cityId, first.plusMonths(i), onlyUsers)).toList())
+				.forEach(s -> stored.put(s.getMonth(), s));
+		List<YearMonth> toAnalyze = new ArrayList<>();
+		for(YearMonth month = first; !month.isAfter(current); month = month.plusMonths(1))
+			if(!stored.containsKey(month))
+				toAnalyze.add(month);
+		YearMonth from = toAnalyze.get(0);
+		List<List<MetaData>> data = this.partitioner.divide(this.mediator.getDataForAnalysis(cityId,
+				from.atDay(1).atStartOfDay(), current.plusMonths(1).atDay(1).atStartOfDay(), onlyUsers),
+				from, (int) from.until(current, ChronoUnit.MONTHS) + 1);
+		List<MonthAnalysis> analyzed = analyzeMonths(toAnalyze.stream()
+				.map(m -> data.get((int) from.until(m, ChronoUnit.MONTHS))).toList());
+		List<MonthStats> closed = new ArrayList<>();
+		for(int i = 0; i < toAnalyze.size(); i++) {
+			MonthStats monthStats = toStats(cityId, toAnalyze.get(i), onlyUsers, analyzed.get(i));
+			stored.put(monthStats.getMonth(), monthStats);
+			if(monthStats.getMonth().isBefore(current))
+				closed.add(monthStats);
+		}
+		List<MonthStats> stats = IntStream.range(0, months).mapToObj(i -> stored.get(first.plusMonths(i))).toList();
+		freeze(closed);
+		if(stats.stream().allMatch(s -> s.getPublications() == 0))
+			return null;
+		return toAnalysis(stats);
+	}
+
+	/**
+	 * salva le statistiche dei mesi conclusi. le statistiche vengono
+	 * solo inserite: se un'altra analisi ne ha appena salvate alcune,
+	 * l'inserimento insieme fallisce e si inseriscono una per volta
+	 * quelle che mancano, lasciando le altre come sono
+	 * @param closed statistiche da salvare
+	 */
+	private void freeze(List<MonthStats> closed) {
+		if(closed.isEmpty())
+			return;
+		try {
+			this.statsRepository.saveAll(closed);
+		} catch(DataIntegrityViolationException e) {
+			closed.forEach(this::freeze);
+		}
+	}
+
+	/**
+	 * salva le statistiche di un mese concluso, se non ci sono gia'
+	 * @param stats statistiche da salvare
+	 */
+	private void freeze(MonthStats stats) {
+		try {
+			if(!this.statsRepository.existsById(stats.getId()))
+				this.statsRepository.save(stats);
+		} catch(DataIntegrityViolationException e) {
+			// salvate nello stesso momento da un'altra analisi
+		}
+	}
+
+	/**
+	 * elimina le statistiche salvate e le analisi calcolate di un comune
+	 * @param cityId id del comune
+	 */
+	public void removeAllFromCity(String cityId) {
+		this.statsRepository.deleteAll(this.statsRepository.findByCityId(cityId));
+		this.cache.keySet().removeIf(k -> k.cityId().equals(cityId));
+		this.versions.remove(cityId);
+	}
+
 	/**
-	 * questo metodo si occupa di dividere i mesi in base
-	 * al numero richiesto.
+	 * analizza i dati degli ultimi mesi, fino al corrente,
+	 * senza usare le statistiche salvate
 	 * @param data dati di da analizzare
 	 * @param months numero di mesi
 	 * @return dati di analisi
 	 */
-	private Analysis getAnalysis(List<MetaData> data, int months) {
+	Analysis getAnalysis(List<MetaData> data, int months) {
 		if(data == null || data.isEmpty())
 			return null;
-		return getAnalysis(this.partitioner.divide(data, months));
+		YearMonth first = YearMonth.now().minusMonths(months - 1);
+		List<MonthAnalysis> analyzed = analyzeMonths(this.partitioner.divide(data, first, months));
+		List<MonthStats> stats = new ArrayList<>();
+		for(int i = 0; i < months; i++)
+			stats.add(toStats(null, first.plusMonths(i), false, analyzed.get(i)));
+		return toAnalysis(stats);
 	}
 	
 	/**
-	 * usando gli analizzatori ottiene tutti i 
-	 * dati necessari per comporre le analisi
-	 * @param data dati da analizzare
+	 * analizza i mesi, ognuno con i propri analizzatori. se c'e'
+	 * piu' di un mese e il parallelismo e' attivo, ogni mese e'
+	 * un compito separato del pool fork-join
+	 * @param months dati divisi per mese
+	 * @return analisi dei mesi, nello stesso ordine
+	 */
+	private List<MonthAnalysis> analyzeMonths(List<List<MetaData>> months) {
+		if(this.pool == null || months.size() < 2)
+			return months.stream().map(m -> new MonthAnalysis(m, this.topSize)).toList();
+		List<ForkJoinTask<MonthAnalysis>> tasks = months.stream()
+				.map(m -> this.pool.submit(() -> new MonthAnalysis(m, this.topSize))).toList();
+		return tasks.stream().map(ForkJoinTask::join).toList();
+	}
+
+	private MonthStats toStats(String cityId, YearMonth month, boolean onlyUsers, MonthAnalysis analysis) {
+		return new MonthStats(cityId, month, onlyUsers, analysis.getPublications(), analysis.getViews(),
+				analysis.getVoteAverage(), analysis.getTopContributors(), analysis.getTopViewed(),
+				analysis.getTopLiked());
+	}
+
+	/**
+	 * compone i risultati dei singoli mesi
+	 * @param months statistiche dei mesi, dal piu' vecchio
 	 * @return dati di analisi
 	 */
-	private Analysis getAnalysis(List<List<MetaData>> data) {
-		long[] publs = getNumberResult(this.publAnalyzer, data);
-		long[] views = getNumberResult(this.viewAnalyzer, data);
-		long[] votes = getNumberResult(this.voteAveAnalyzer, data);
-		String[][] contr = getTFResult(this.TFCAnalyzer, data);
-		String[][] like = getTFResult(this.TFLAnalyzer, data);
-		String[][] viewed = getTFResult(this.TFVAnalyzer, data);
-		return new Analysis(publs, views, votes, contr, like, viewed);
-	}
-
-	private long[] getNumberResult(NumberMonthAnalyzer analyzer, List<List<MetaData>> data) {
-		long[] result = new long[data.size()];
-		this.director.setBuilder(analyzer);
-		for(int i = 0; i < data.size(); i++) {
-			director.make(data.get(i));
-			result[i] = analyzer.getResult();
-		}
-		return result;
+	private Analysis toAnalysis(List<MonthStats> months) {
+		long[] publs = months.stream().mapToLong(MonthStats::getPublications).toArray();
+		long[] views = months.stream().mapToLong(MonthStats::getViews).toArray();
+		long[] votes = months.stream().mapToLong(MonthStats::getVoteAverage).toArray();
+		String[][] contr = months.stream().map(m -> m.getTopContributors(this.topSize)).toArray(String[][]::new);
+		String[][] viewed = months.stream().map(m -> m.getTopViewed(this.topSize)).toArray(String[][]::new);
+		String[][] like = months.stream().map(m -> m.getTopLiked(this.topSize)).toArray(String[][]::new);
+		return new Analysis(publs, views, votes, contr, viewed, like);
 	}
 
-	private String[][] getTFResult(TopFiveMonthAnalyzer analyzer, List<List<MetaData>> data) {
-		String[][] result = new String[data.size()][5];
-		this.director.setBuilder(analyzer);
-		for(int i = 0; i < data.size(); i++) {
-			director.make(data.get(i));
-			result[i] = analyzer.getResult();
-		}
-		return result;
+	private record CacheKey(String cityId, int months, boolean onlyUsers, YearMonth month) { }
+
+	private record CachedAnalysis(Analysis analysis, long version, AtomicBoolean refreshing) { }
+
+	private static class CityVersion {
+		private final AtomicLong version = new AtomicLong();
+		private final AtomicLong views = new AtomicLong();
 	}
-	
+
 }
@@ -0,0 +1,55 @@
+package Synk.Api.Controller.Analysis;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * classifica dei primi k elementi per punteggio. tiene solo
+ * i k migliori in un heap col peggiore in cima, quindi ogni
+ * inserimento costa O(log k) e la memoria resta O(k).
+ * a parita' di punteggio vince l'elemento inserito prima
+ */
+public class BoundedTop {
+	
+	private final int size;
+	private final PriorityQueue<Entry> heap;
+	private long sequence;
+	
+	/**
+	 * @param size posti della classifica
+	 */
+	public BoundedTop(int size) {
+		this.size = size;
+		this.heap = new PriorityQueue<>(Math.max(size, 1), Comparator.comparingDouble(Entry::score)
+				.thenComparing(Comparator.comparingLong(Entry::order).reversed()));
+	}
+	
+	/**
+	 * propone un elemento per la classifica
+	 * @param id elemento
+	 * @param score punteggio dell'elemento
+	 */
+	public void offer(String id, double score) {
+		long order = this.sequence++;
+		if(this.heap.size() < this.size) {
+			this.heap.add(new Entry(id, score, order));
+		} else if(this.size > 0 && score > this.heap.peek().score()) {
+			this.heap.poll();
+			this.heap.add(new Entry(id, score, order));
+		}
+	}
+	
+	/**
+	 * @return classifica dal primo posto; i posti non occupati sono null
+	 */
+	public String[] getResult() {
+		String[] result = new String[this.size];
+		PriorityQueue<Entry> copy = new PriorityQueue<>(this.heap);
+		for(int i = copy.size() - 1; i >= 0; i--)
+			result[i] = copy.poll().id();
+		return result;
+	}
+	
+	private record Entry(String id, double score, long order) { }
+	
+}
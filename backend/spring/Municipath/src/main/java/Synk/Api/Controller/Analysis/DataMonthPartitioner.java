@@ -1,59 +1,55 @@
 package Synk.Api.Controller.Analysis;
 
+import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 
 import Synk.Api.Model.MetaData;
 
 public class DataMonthPartitioner {
 	
-	private int numberOfMonths;
-	
 	/**
-	 * Metodo per dividere i dati in base al mese
+	 * Metodo per dividere i dati per mese di calendario. ogni dato
+	 * va direttamente nella lista del suo mese, calcolata dalla
+	 * distanza in mesi dal primo: non serve ordinare i dati, e i
+	 * mesi senza dati restano vuoti invece di spostare i successivi.
+	 * i dati fuori dai mesi richiesti vengono ignorati
 	 * @param data dati da dividere
-	 * @return dati divisi
+	 * @param first primo mese
+	 * @param months numero di mesi
+	 * @return dati divisi, dal primo mese
 	 */
-	public ArrayList<List<MetaData>> divide(List<MetaData> data, int months){
-		this.numberOfMonths = months;
-		ArrayList<List<MetaData>> array = generateArray();
-		data.sort(Comparator.comparing(MetaData::getPublicationTime));
-		if(!data.isEmpty()) 
-			assignData(array, data);
+	public List<List<MetaData>> divide(List<MetaData> data, YearMonth first, int months){
+		List<List<MetaData>> array = generateArray(months);
+		long start = index(first.getYear(), first.getMonthValue());
+		for(MetaData md : data) {
+			LocalDateTime time = md.getPublicationTime();
+			long offset = index(time.getYear(), time.getMonthValue()) - start;
+			if(offset >= 0 && offset < months)
+				array.get((int) offset).add(md);
+		}
 		return array;
 	}
 	
 	/**
-	 * genera un nuovo array inizializzando le liste che contiene
-	 * @return nuovo array
+	 * @return numero progressivo del mese, senza creare oggetti
 	 */
-	private ArrayList<List<MetaData>> generateArray(){
-		ArrayList<List<MetaData>> array = new ArrayList<List<MetaData>>();
-		for(int i = 0; i < 6; i++) {
-			array.add(new ArrayList<MetaData>());
-		}
-		return array;
+	private static long index(int year, int month) {
+		return year * 12L + month - 1;
 	}
 	
 	/**
-	 * metodo per assegnare i dati in base al mese
-	 * @param array array dove posizionare i dati
-	 * @param data dati da posizionare
+	 * genera un nuovo array inizializzando le liste che contiene
+	 * @param months numero di mesi
+	 * @return nuovo array
 	 */
-	private void assignData(ArrayList<List<MetaData>> array, List<MetaData> data) {
-		int count = 0, month = data.get(0).getPublicationTime().getMonth().getValue();
-		for(MetaData md : data) {
-			if(md.getPublicationTime().getMonth().getValue() != month) {
-				//se il mese cambia, lo salvo e aumento il counter di 1
-				month = md.getPublicationTime().getMonth().getValue();
-				count++;
-			}
-			//se supero i sei mesi mi fermo
-			if(count > this.numberOfMonths - 1)
-				break;
-			array.get(count).add(md);
+	private List<List<MetaData>> generateArray(int months){
+		List<List<MetaData>> array = new ArrayList<List<MetaData>>(months);
+		for(int i = 0; i < months; i++) {
+			array.add(new ArrayList<MetaData>());
 		}
+		return array;
 	}
 	
 }
@@ -6,25 +6,27 @@ import Synk.Api.Model.MetaData;
 
 public class DirectorAnalyzer {
 	
-	private MonthAnalyzer builder;
+	private List<MonthAnalyzer> builders;
 	
 	/**
-	 * imposta un nuovo builder per i dati
-	 * @param builder nuovo builder
+	 * imposta i builder a cui somministrare i dati
+	 * @param builders nuovi builder
 	 */
-	public void setBuilder(MonthAnalyzer builder) {
-		this.builder = builder;
+	public void setBuilders(MonthAnalyzer... builders) {
+		this.builders = List.of(builders);
 	}
 	
 	/**
-	 * prende i dati e li somministra 
-	 * iterativamente al builder
+	 * prende i dati e li somministra a tutti i builder
+	 * insieme, passando una sola volta sui dati
 	 * @param data dati da somministrare
 	 */
 	public void make(List<MetaData> data) {
-		this.builder.StartAnalysis();
+		for(MonthAnalyzer builder : this.builders)
+			builder.StartAnalysis();
 		for(MetaData md : data) {
-			this.builder.acceptData(md);
+			for(MonthAnalyzer builder : this.builders)
+				builder.acceptData(md);
 		}
 	}
 	
@@ -0,0 +1,63 @@
+package Synk.Api.Controller.Analysis;
+
+import java.util.List;
+
+import Synk.Api.Model.MetaData;
+
+/**
+ * analisi di un singolo mese. ha i propri analizzatori,
+ * quindi analisi diverse, anche dello stesso comune,
+ * possono essere fatte insieme da thread diversi
+ */
+public class MonthAnalysis {
+	
+	private final PublicationMonthAnalyzer publAnalyzer;
+	private final ViewMonthAnalyzer viewAnalyzer;
+	private final VoteAverageMonthAnalyzer voteAveAnalyzer;
+	private final TopContributorMonthAnalyzer TCAnalyzer;
+	private final TopLikedMonthAnalyzer TLAnalyzer;
+	private final TopViewedMonthAnalyzer TVAnalyzer;
+	
+	/**
+	 * analizza i dati di un mese passandoci sopra una volta sola
+	 * @param data dati del mese
+	 * @param topSize posti delle classifiche
+	 */
+	public MonthAnalysis(List<MetaData> data, int topSize) {
+		this.publAnalyzer = new PublicationMonthAnalyzer();
+		this.viewAnalyzer = new ViewMonthAnalyzer();
+		this.voteAveAnalyzer = new VoteAverageMonthAnalyzer();
+		this.TCAnalyzer = new TopContributorMonthAnalyzer(topSize);
+		this.TLAnalyzer = new TopLikedMonthAnalyzer(topSize);
+		this.TVAnalyzer = new TopViewedMonthAnalyzer(topSize);
+		DirectorAnalyzer director = new DirectorAnalyzer();
+		director.setBuilders(this.publAnalyzer, this.viewAnalyzer, this.voteAveAnalyzer,
+				this.TCAnalyzer, this.TLAnalyzer, this.TVAnalyzer);
+		director.make(data);
+	}
+	
+	public long getPublications() {
+		return this.publAnalyzer.getResult();
+	}
+	
+	public long getViews() {
+		return this.viewAnalyzer.getResult();
+	}
+	
+	public long getVoteAverage() {
+		return this.voteAveAnalyzer.getResult();
+	}
+	
+	public String[] getTopContributors() {
+		return this.TCAnalyzer.getResult();
+	}
+	
+	public String[] getTopLiked() {
+		return this.TLAnalyzer.getResult();
+	}
+	
+	public String[] getTopViewed() {
+		return this.TVAnalyzer.getResult();
+	}
+	
+}
@@ -0,0 +1,41 @@
+package Synk.Api.Controller.Analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import Synk.Api.Model.MetaData;
+
+public class TopContributorMonthAnalyzer implements TopMonthAnalyzer {
+	
+	private final int size;
+	/**
+	 * pubblicazioni per autore, contate senza
+	 * creare un nuovo oggetto ad ogni dato
+	 */
+	private Map<String, int[]> publications;
+	
+	/**
+	 * @param size posti della classifica
+	 */
+	public TopContributorMonthAnalyzer(int size) {
+		this.size = size;
+	}
+	
+	@Override
+	public void StartAnalysis() {
+		this.publications = new HashMap<>();
+	}
+
+	@Override
+	public void acceptData(MetaData data) {
+		this.publications.computeIfAbsent(data.getAuthor(), a -> new int[1])[0]++;
+	}
+
+	@Override
+	public String[] getResult() {
+		BoundedTop top = new BoundedTop(this.size);
+		this.publications.forEach((author, count) -> top.offer(author, count[0]));
+		return top.getResult();
+	}
+
+}
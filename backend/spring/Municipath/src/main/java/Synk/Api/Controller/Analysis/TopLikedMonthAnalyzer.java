@@ -0,0 +1,47 @@
+package Synk.Api.Controller.Analysis;
+
+import Synk.Api.Model.Feedback.Score;
+import Synk.Api.Model.MetaData;
+
+public class TopLikedMonthAnalyzer implements TopMonthAnalyzer {
+
+	private final int size;
+	private BoundedTop top;
+	private final double Z = 1.96f;
+	
+	/**
+	 * @param size posti della classifica
+	 */
+	public TopLikedMonthAnalyzer(int size) {
+		this.size = size;
+	}
+	
+	@Override
+	public void StartAnalysis() {
+		this.top = new BoundedTop(this.size);
+	}
+
+	@Override
+	public void acceptData(MetaData data) {
+		if(data.getVote().getVoteCount() == 0)
+			return;
+		double score = wilsonScore(data.getVote());
+		if(score > 0)
+			this.top.offer(data.getId(), score);
+	}
+
+	@Override
+	public String[] getResult() {
+		return this.top.getResult();
+	}
+
+	private double wilsonScore(Score vote) {
+		double p = vote.getVoteAverage() / 5;
+		double n = vote.getVoteCount();
+		double left = p + ((Z * Z) / (2 * n));
+		double right = Z * Math.sqrt((p * (1 - p) / n) + ((Z * Z) / (4 * n * n)));
+		double under = 1 + ((Z * Z) / n);
+		return (left - right) / under;
+	}
+
+}
@@ -0,0 +1,14 @@
+package Synk.Api.Controller.Analysis;
+
+public interface TopMonthAnalyzer extends MonthAnalyzer {
+	
+	/**
+	 * metodo per avere una classifica
+	 * di risultati in base ad un
+	 * analisi mensile
+	 * @return classifica dei dati, dal primo;
+	 * i posti non occupati sono null
+	 */
+	public String[] getResult();
+	
+}
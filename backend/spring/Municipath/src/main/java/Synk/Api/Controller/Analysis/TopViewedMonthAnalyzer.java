@@ -0,0 +1,33 @@
+package Synk.Api.Controller.Analysis;
+
+import Synk.Api.Model.MetaData;
+
+public class TopViewedMonthAnalyzer implements TopMonthAnalyzer {
+	
+	private final int size;
+	private BoundedTop top;
+	
+	/**
+	 * @param size posti della classifica
+	 */
+	public TopViewedMonthAnalyzer(int size) {
+		this.size = size;
+	}
+	
+	@Override
+	public void StartAnalysis() {
+		this.top = new BoundedTop(this.size);
+	}
+
+	@Override
+	public void acceptData(MetaData data) {
+		if(data.getViewsCount() > 0)
+			this.top.offer(data.getId(), data.getViewsCount());
+	}
+
+	@Override
+	public String[] getResult() {
+		return this.top.getResult();
+	}
+
+}
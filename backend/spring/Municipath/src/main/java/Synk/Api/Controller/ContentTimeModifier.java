@@ -5,6 +5,9 @@ import java.time.temporal.ChronoUnit;
 
 import org.springframework.stereotype.Service;
 
+import Synk.Api.Controller.Analysis.AnalysisHandler;
+import Synk.Api.Controller.Group.GroupHandler;
+import Synk.Api.Controller.Post.PointHandler;
 import Synk.Api.Model.Group.Group;
 import Synk.Api.Model.Group.GroupRepository;
 import Synk.Api.Model.Post.Post;
@@ -24,18 +27,27 @@ public class ContentTimeModifier {
 	
 	private PostRepository postRepo;
 	private GroupRepository groupRepo;
+	private AnalysisHandler analysis;
+	private PointHandler points;
+	private GroupHandler groups;
 	private IdentifierManager idManager;
 	
-	public ContentTimeModifier(PostRepository postRepo, GroupRepository groupRepo) {
+	public ContentTimeModifier(PostRepository postRepo, GroupRepository groupRepo, AnalysisHandler analysis,
+			PointHandler points, GroupHandler groups) {
 		this.postRepo = postRepo;
 		this.groupRepo = groupRepo;
+		this.analysis = analysis;
+		this.points = points;
+		this.groups = groups;
 		this.idManager = new IdentifierManager();
 	}
 	
 	public boolean modifyTime (String contentId, int time, ChronoUnit unit, TimeType op) {
-		if(this.idManager.isGroup(contentId))
-			return modifyGroupTime(contentId, time, unit, op);
-		return modifyPostTime(contentId, time, unit, op);
+		boolean modified = this.idManager.isGroup(contentId) ?
+				modifyGroupTime(contentId, time, unit, op) : modifyPostTime(contentId, time, unit, op);
+		if(modified && op == TimeType.PUBL)
+			this.analysis.contentChanged(this.idManager.getCityId(contentId));
+		return modified;
 	}
 
 	private boolean modifyGroupTime(String contentId, int time, ChronoUnit unit, TimeType op) {
@@ -50,6 +62,7 @@ public class ContentTimeModifier {
 		if(op == TimeType.PUBL)
 			content.setPublicationTime(newTime);
 		this.groupRepo.save(content);
+		this.groups.scheduleEnding(content);
 		return true;
 	}
 
@@ -65,6 +78,7 @@ public class ContentTimeModifier {
 		if(op == TimeType.PUBL)
 			content.setPublicationTime(newTime);
 		this.postRepo.save(content);
+		this.points.scheduleEnding(content);
 		return true;
 	}
 	
@@ -1,39 +1,104 @@
 package Synk.Api.Controller;
 
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import Synk.Api.Controller.Group.GroupHandler;
 import Synk.Api.Controller.Post.PointHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 
 @Service
 public class EndingEventManager {
 	
+	private static final Logger log = LoggerFactory.getLogger(EndingEventManager.class);
+	
 	private PointHandler pointHandler;
     private GroupHandler groupHandler;
+    private ScheduledExecutorService executor;
+    /**
+     * metriche: durata di ogni controllo, contenuti
+     * eliminati perche' finiti e controlli falliti
+     */
+    private final Timer sweep;
+    private final Counter expiredPosts, expiredGroups, failedPosts, failedGroups;
 	
     /**
      * Il costruttore riceve le repo via iniezione
      * e controlla periodicamente i contenuti a tempo
      * non persistenti, eliminandoli in caso di fine.
+     * ogni controllo guarda solo i contenuti in coda gia'
+     * finiti, quindi puo' essere fatto ogni secondo.
      * @param pointHandler repo dei punti
      * @param groupHandler repo dei gruppi
+     * @param period secondi tra due controlli
      */
-	public EndingEventManager(PointHandler pointHandler, GroupHandler groupHandler) {
+	public EndingEventManager(PointHandler pointHandler, GroupHandler groupHandler,
+			@Value("${municipath.ending.check-seconds:1}") long period) {
 		this.pointHandler = pointHandler;
 		this.groupHandler = groupHandler;
-		Executors.newScheduledThreadPool(1)
-		.scheduleAtFixedRate(this::checkEnding, 0, 5, TimeUnit.MINUTES);
+		this.sweep = Timer.builder("municipath.ending.sweep")
+				.description("durata di un controllo dei contenuti a tempo").register(Metrics.globalRegistry);
+		this.expiredPosts = Counter.builder("municipath.ending.expired").tag("type", "post")
+				.description("contenuti a tempo eliminati perche' finiti").register(Metrics.globalRegistry);
+		this.expiredGroups = Counter.builder("municipath.ending.expired").tag("type", "group")
+				.description("contenuti a tempo eliminati perche' finiti").register(Metrics.globalRegistry);
+		this.failedPosts = Counter.builder("municipath.ending.failed").tag("type", "post")
+				.description("controlli dei contenuti a tempo falliti").register(Metrics.globalRegistry);
+		this.failedGroups = Counter.builder("municipath.ending.failed").tag("type", "group")
+				.description("controlli dei contenuti a tempo falliti").register(Metrics.globalRegistry);
+		this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "ending-events");
+			t.setDaemon(true);
+			return t;
+		});
+		this.executor.scheduleWithFixedDelay(this::checkEnding, 0, period, TimeUnit.SECONDS);
 	}
 	
 	/**
 	 * metodo che controlla la conclusione di contenuti a tempo.
+	 * post e gruppi vengono controllati separatamente, cosi' che
+	 * un errore sui post non salti il controllo dei gruppi
 	 */
 	private void checkEnding() {
-		this.pointHandler.checkEndingPosts();
-		this.groupHandler.checkEndingGroups();
+		long start = System.nanoTime();
+		check("post", this.pointHandler::checkEndingPosts, this.expiredPosts, this.failedPosts);
+		check("gruppi", this.groupHandler::checkEndingGroups, this.expiredGroups, this.failedGroups);
+		this.sweep.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+	}
+	
+	/**
+	 * esegue un controllo. un errore viene registrato e non
+	 * ferma i controlli successivi, che riproveranno
+	 * @param type tipo di contenuto controllato
+	 * @param check controllo, restituisce i contenuti eliminati
+	 * @param expired contatore dei contenuti eliminati
+	 * @param failed contatore dei controlli falliti
+	 */
+	private void check(String type, IntSupplier check, Counter expired, Counter failed) {
+		try {
+			expired.increment(check.getAsInt());
+		} catch(RuntimeException e) {
+			failed.increment();
+			log.error("controllo dei " + type + " a tempo fallito", e);
+		}
+	}
+	
+	/**
+	 * ferma i controlli
+	 */
+	@PreDestroy
+	public void stop() {
+		this.executor.shutdownNow();
 	}
 	
 }
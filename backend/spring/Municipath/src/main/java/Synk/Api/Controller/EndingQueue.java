@@ -0,0 +1,60 @@
+package Synk.Api.Controller;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * coda dei contenuti a tempo non persistenti, ordinata per data
+ * di fine. il controllo periodico guarda solo la testa della coda,
+ * quindi costa quanto i contenuti scaduti e non quanto tutti quelli
+ * salvati. un contenuto puo' essere messo in coda piu' volte, ad
+ * esempio dopo una modifica: chi lo riceve deve ricontrollarlo
+ */
+public class EndingQueue {
+
+	private final PriorityQueue<Ending> queue;
+
+	public EndingQueue() {
+		this.queue = new PriorityQueue<>(Comparator.comparing(Ending::endTime).thenComparing(Ending::id));
+	}
+
+	/**
+	 * mette in coda un contenuto
+	 * @param id id del contenuto
+	 * @param endTime data di fine
+	 */
+	public synchronized void schedule(String id, LocalDateTime endTime) {
+		if(id == null || endTime == null)
+			return;
+		this.queue.add(new Ending(id, endTime));
+	}
+
+	/**
+	 * toglie dalla coda i contenuti finiti, al massimo
+	 * quanti ne sono richiesti
+	 * @param now momento del controllo
+	 * @param max numero massimo di contenuti da togliere
+	 * @return id dei contenuti con data di fine precedente, senza ripetizioni
+	 */
+	public synchronized List<String> pollEnded(LocalDateTime now, int max) {
+		Set<String> ended = new LinkedHashSet<>();
+		while(ended.size() < max && !this.queue.isEmpty() && this.queue.peek().endTime().isBefore(now))
+			ended.add(this.queue.poll().id());
+		return new ArrayList<>(ended);
+	}
+
+	/**
+	 * @return contenuti in coda
+	 */
+	public synchronized int size() {
+		return this.queue.size();
+	}
+
+	private record Ending(String id, LocalDateTime endTime) {
+	}
+}
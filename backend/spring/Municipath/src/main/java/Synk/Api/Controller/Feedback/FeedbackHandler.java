@@ -1,12 +1,22 @@
 package Synk.Api.Controller.Feedback;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import Synk.Api.Model.Feedback.FeedbackRepository;
+import Synk.Api.Model.Feedback.FeedbackSummary;
+import Synk.Api.Model.Feedback.FeedbackSummaryRepository;
 import Synk.Api.Model.Feedback.Score;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import Synk.Api.Controller.MuniciPathMediator;
 import Synk.Api.Model.Feedback.Feedback;
@@ -22,6 +32,10 @@ public class FeedbackHandler {
 
     @Autowired
 	private FeedbackRepository feedbackRepository;
+    @Autowired
+	private FeedbackSummaryRepository summaryRepository;
+    @Autowired
+	private TransactionTemplate transactions;
 
 	/**
 	 * imposta il mediator
@@ -34,7 +48,10 @@ public class FeedbackHandler {
 	/**
 	 * metodo per valutare un contenuto. una eventuale
 	 * valutazione precedente dello stesso utente
-	 * verra' sovrascritta
+	 * verra' sovrascritta. il riepilogo del contenuto
+	 * viene bloccato prima di leggere il voto precedente e
+	 * aggiornato nella stessa transazione, cosi' che voti
+	 * contemporanei sullo stesso contenuto non si perdano
 	 * @param username nome utente
 	 * @param contentId contenuto da valutare
 	 * @param vote voto
@@ -48,11 +65,37 @@ public class FeedbackHandler {
 			return false;
 		if(!(this.mediator.usernameExists(username) && this.mediator.contentExist(contentId)))
 			return false;
+		createSummaryIfAbsent(contentId);
 		String id = username + "." + contentId;
-        this.feedbackRepository.findById(id).ifPresent(feedback -> this.feedbackRepository.delete(feedback));
-        Feedback newFeedback = new Feedback(id, username, contentId, vote);
-		this.feedbackRepository.save(newFeedback);
-		return true;
+		boolean voted = this.transactions.execute(status -> {
+			Optional<FeedbackSummary> summary = this.summaryRepository.findByIdForUpdate(contentId);
+			if(summary.isEmpty())
+				return false;
+	        Optional<Feedback> previous = this.feedbackRepository.findById(id);
+	        summary.get().addVote(vote - previous.map(Feedback::getVote).orElse(0f), previous.isPresent() ? 0 : 1);
+			this.feedbackRepository.save(new Feedback(id, username, contentId, vote));
+			return true;
+		});
+		if(voted)
+			this.mediator.contentVoted(contentId);
+		return voted;
+	}
+	
+	/**
+	 * crea il riepilogo vuoto di un contenuto, se non esiste,
+	 * in una transazione a parte. se due valutazioni provano a
+	 * crearlo insieme, quella che fallisce usa quello dell'altra
+	 * @param contentId id del contenuto
+	 */
+	private void createSummaryIfAbsent(String contentId) {
+		if(this.summaryRepository.existsById(contentId))
+			return;
+		try {
+			this.transactions.executeWithoutResult(status -> 
+				this.summaryRepository.save(new FeedbackSummary(contentId, 0, 0)));
+		} catch(DataIntegrityViolationException e) {
+			// creato da un'altra valutazione
+		}
 	}
 	
 	/**
@@ -63,22 +106,54 @@ public class FeedbackHandler {
 	public Score getFeedback(String contentId) {
 		if(contentId == null)
 			return null;
-		List<Feedback> list = this.feedbackRepository.findByContentId(contentId);
-		if(list.isEmpty())
-			return new Score(0, 0);
-		float sum = list.stream().map(f -> f.getVote()).reduce((a,b) -> a + b).orElse(0f);
-		return new Score(sum/list.size(), list.size());
+		return this.summaryRepository.findById(contentId)
+				.map(FeedbackSummary::toScore).orElse(new Score(0, 0));
+	}
+	
+	/**
+	 * metodo per ottenere i voti di piu' contenuti
+	 * con una sola ricerca
+	 * @param contentIds id dei contenuti
+	 * @return voto di ogni contenuto, per id
+	 */
+	public Map<String, Score> getFeedback(Collection<String> contentIds) {
+		if(contentIds == null)
+			return null;
+		Map<String, Score> scores = contentIds.stream().distinct()
+				.collect(Collectors.toMap(Function.identity(), id -> new Score(0, 0)));
+		if(scores.isEmpty())
+			return scores;
+		this.summaryRepository.findAllById(scores.keySet())
+				.forEach(s -> scores.put(s.getContentId(), s.toScore()));
+		return scores;
 	}
 	
 	/**
 	 * metodo per rimuovere tutti i voti
-	 * di un contenuto destinato alla eliminazione
+	 * di un contenuto destinato alla eliminazione,
+	 * insieme al suo riepilogo
 	 * @param contentId id del contenuto
 	 */
+	@Transactional
 	public void removeAllFeedbackOf(String contentId) {
 		if(contentId == null)
 			return;
 		List<Feedback> list =this.feedbackRepository.findByContentId(contentId);
 		this.feedbackRepository.deleteAll(list);
+		this.summaryRepository.deleteById(contentId);
+	}
+	
+	/**
+	 * metodo per rimuovere tutti i voti di piu' contenuti
+	 * destinati alla eliminazione, insieme ai loro riepiloghi,
+	 * con una sola ricerca per tutti i contenuti
+	 * @param contentIds id dei contenuti
+	 */
+	@Transactional
+	public void removeAllFeedbackOf(Collection<String> contentIds) {
+		if(contentIds == null || contentIds.isEmpty())
+			return;
+		this.feedbackRepository.deleteAll(this.feedbackRepository.findByContentIdIn(contentIds));
+		this.summaryRepository.deleteAll(this.summaryRepository.findAllById(contentIds));
 	}
 }
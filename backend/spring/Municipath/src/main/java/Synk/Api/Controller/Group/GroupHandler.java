@@ -2,22 +2,34 @@ package Synk.Api.Controller.Group;
 
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import Synk.Api.Controller.AuthorProvider;
+import Synk.Api.Controller.EndingQueue;
 import Synk.Api.Controller.IdentifierManager;
 import Synk.Api.Controller.MuniciPathMediator;
+import Synk.Api.Model.Analysis.ContentData;
+import Synk.Api.Model.Feedback.Score;
 import Synk.Api.Model.Group.Group;
+import Synk.Api.Model.Group.GroupCounter;
+import Synk.Api.Model.Group.GroupCounterRepository;
 import Synk.Api.Model.Group.GroupRepository;
 import Synk.Api.Model.Pending.PendingRequest;
 import Synk.Api.Model.Post.Post;
 import Synk.Api.View.ViewModel.ProtoGroup;
+import jakarta.annotation.PostConstruct;
 
 @Service
 public class GroupHandler implements AuthorProvider {
@@ -25,24 +37,44 @@ public class GroupHandler implements AuthorProvider {
 
 	private final Integer CONTR_NOT_AUTH_LEVEL = 2;
 	private final Integer CONTR_AUTH_LEVEL = 3;
+	private final int MAX_ID_ATTEMPTS = 5;
 	/**
 	 * mediatore tra i vari handler
 	 */
 	private MuniciPathMediator mediator;
-	/**
-	 * variabile di appoggio
-	 */
-	private int count;
 	/**
 	 * gestore degli id
 	 */
 	private IdentifierManager idManager = new IdentifierManager();
+	/**
+	 * gruppi non persistenti in attesa della loro fine
+	 */
+	private EndingQueue endings = new EndingQueue();
 	
 	/**
 	 * repository dei group
 	 */
 	@Autowired
 	private GroupRepository groupRepository;
+	@Autowired
+	private GroupCounterRepository counterRepository;
+	@Autowired
+	private TransactionTemplate transactions;
+	
+	/**
+	 * gruppi scaduti eliminati in una sola transazione
+	 */
+	@Value("${municipath.ending.batch-size:100}")
+	private int endingBatchSize;
+	
+	/**
+	 * ricostruisce la coda dei gruppi a tempo da quelli salvati
+	 */
+	@PostConstruct
+	public void loadEndings() {
+		this.groupRepository.findByPersistenceFalseAndEndTimeNotNull()
+			.forEach(g -> this.endings.schedule(g.getId(), g.getEndTime()));
+	}
 	
 	/**
 	 * imposta il mediator
@@ -53,24 +85,37 @@ public class GroupHandler implements AuthorProvider {
     }
 	
 	/**
-	 * Rimuove un postId da ogni gruppo in cui e' contentuto
+	 * Rimuove un postId da ogni gruppo in cui e' contentuto.
+	 * vengono toccati solo i gruppi che lo contengono: quelli
+	 * che restano con almeno due post vengono salvati insieme,
+	 * gli altri vengono eliminati nella stessa transazione
 	 * @param post postId da rimuovere da ogni gruppo
 	 */
+	@Transactional
 	public void removeFromAll(String post) {
-		String cityId = idManager.getCityId(post);
-		groupRepository.findAll().forEach(g -> g.removePost(post));
-		checkCompositionOfGroups(cityId);
+		removeFrom(this.groupRepository.findByPost(post), List.of(post));
 	}
 	
 	/**
-	 * metodo di servizio che prende tutti i gruppi di un comune
-	 * ed elimina tutti coloro che non hanno almeno due post al loro interno
-	 * @param cityId comune da controllare
+	 * Rimuove piu' postId da ogni gruppo in cui sono contenuti,
+	 * cercando con una sola query i gruppi che ne contengono qualcuno
+	 * @param posts postId da rimuovere da ogni gruppo
 	 */
-	private void checkCompositionOfGroups(String cityId) {
-		List<Group> toDelete = getAllFromCity(cityId)
-				.filter(g -> !g.isGroup()).toList();
-		toDelete.forEach(g -> this.mediator.removeAllDataOf(g.getId()));
+	@Transactional
+	public void removeFromAll(Collection<String> posts) {
+		if(posts == null || posts.isEmpty())
+			return;
+		removeFrom(this.groupRepository.findByPosts(posts), posts);
+	}
+	
+	private void removeFrom(List<Group> groups, Collection<String> posts) {
+		groups.forEach(g -> posts.forEach(g::removePost));
+		Map<Boolean, List<Group>> split = groups.stream()
+				.collect(Collectors.partitioningBy(Group::isGroup));
+		this.groupRepository.saveAll(split.get(true));
+		List<Group> toDelete = split.get(false);
+		if(!toDelete.isEmpty())
+			this.mediator.removeAllDataOf(toDelete.stream().map(Group::getId).toList());
 		this.groupRepository.deleteAll(toDelete);
 	}
 	
@@ -82,6 +127,7 @@ public class GroupHandler implements AuthorProvider {
 		List<Group> toDelete = getAllFromCity(cityId).toList();
 		toDelete.forEach(g -> this.mediator.removeAllDataOf(g.getId()));
 		this.groupRepository.deleteAll(toDelete);
+		this.counterRepository.deleteById(cityId);
 	}
 	
 	/**
@@ -90,17 +136,7 @@ public class GroupHandler implements AuthorProvider {
 	 * @return tutti i gruppi contenuti in quel comune
 	 */
 	private Stream<Group> getAllFromCity(String cityId){
-		return getStreamOfAll()
-				.filter(g -> g.getCityId().equals(cityId));
-	}
-	
-	/**
-	 * metodo privato di servizio che restituisce 
-	 * uno stream parallelo con tutti i gruppi
-	 * @return stream con tutti i gruppi
-	 */
-	private Stream<Group> getStreamOfAll(){
-		return StreamSupport.stream(groupRepository.findAll().spliterator(), true);
+		return this.groupRepository.findByCityId(cityId).stream();
 	}
 	
 	/**
@@ -127,6 +163,7 @@ public class GroupHandler implements AuthorProvider {
             this.mediator.notifyCreation(group);
         }
 		this.groupRepository.save(group);
+		scheduleEnding(group);
 		return true;
 	}
 	
@@ -150,6 +187,7 @@ public class GroupHandler implements AuthorProvider {
 		if(mediator.canPublish(idManager.getCityId(groupId), author)) {
 			group.edit(data);
 			groupRepository.save(group);
+			scheduleEnding(group);
 		}
 		else mediator.addGroupPending(groupId, data);
 		return true;
@@ -170,6 +208,7 @@ public class GroupHandler implements AuthorProvider {
 			return false;
 		group.edit(data);
 		groupRepository.save(group);
+		scheduleEnding(group);
         String cityName = this.mediator.getNameOfCity(group.getCityId());
         this.mediator.send(cityName, group.getId(), "Il tuo insieme è stato modificato dal comune.", group.getAuthor());
 		return true;
@@ -185,6 +224,7 @@ public class GroupHandler implements AuthorProvider {
 		Group group = viewGroup(request.getId());
 		group.edit(request);
 		groupRepository.save(group);
+		scheduleEnding(group);
 	}
 	
 	/**
@@ -224,17 +264,38 @@ public class GroupHandler implements AuthorProvider {
 
 	/**
 	 * metodo privato per calcolare il nuovo id 
-	 * di un gruppo
+	 * di un gruppo. il numero viene preso dal contatore
+	 * del comune in una transazione breve e dedicata;
+	 * se due richieste creano insieme il contatore,
+	 * quella che fallisce riprova avanzandolo
 	 * @param cityId id del comune
 	 * @return nuovo id
 	 */
 	private String getId(String cityId) {
-		this.count = 0;
-		getAllFromCity(cityId).forEach(g -> {
-			int v = Integer.parseInt(idManager.getContentId(g.getId()));
-		    this.count = count > v ? count : v + 1;
-		});
-		return cityId+".g."+ this.count;
+		for(int attempt = 1; ; attempt++) {
+			try {
+				return cityId + ".g." + this.transactions.execute(status -> nextNumber(cityId));
+			} catch(DataIntegrityViolationException e) {
+				if(attempt == MAX_ID_ATTEMPTS)
+					throw e;
+			}
+		}
+	}
+	
+	/**
+	 * avanza il contatore del comune, creandolo alla
+	 * prima richiesta a partire dai gruppi gia' esistenti
+	 * @param cityId id del comune
+	 * @return numero del nuovo gruppo
+	 */
+	private int nextNumber(String cityId) {
+		if(this.counterRepository.increment(cityId) > 0)
+			return this.counterRepository.findById(cityId).get().getNextId() - 1;
+		int first = getAllFromCity(cityId)
+				.mapToInt(g -> Integer.parseInt(idManager.getContentId(g.getId())) + 1)
+				.max().orElse(0);
+		this.counterRepository.save(new GroupCounter(cityId, first + 1));
+		return first;
 	}
 	
 	/**
@@ -262,8 +323,7 @@ public class GroupHandler implements AuthorProvider {
 	public List<Group> viewGroups(List<String> groupIds) {
 		if(groupIds == null)
 			return null;
-		return getStreamOfAll()
-				.filter(g -> groupIds.contains(g.getId()))
+		return StreamSupport.stream(this.groupRepository.findAllById(groupIds).spliterator(), false)
 				.toList();
 	}
 	
@@ -278,29 +338,47 @@ public class GroupHandler implements AuthorProvider {
 	public List<Group> viewGroups(String cityId, LocalDateTime from) {
 		if(cityId == null || from == null)
 			return null;
-		return this.groupRepository.findByCityId(cityId).stream()
-				.filter(g -> g.getPublicationTime().isAfter(from)).map(g -> {
-					g.setVote(this.mediator.getVoteOf(g.getId()));
-					return g;
-				}).toList();
+		List<Group> groups = this.groupRepository.findByCityId(cityId).stream()
+				.filter(g -> g.getPublicationTime().isAfter(from)).toList();
+		Map<String, Score> votes = this.mediator.getVotesOf(groups.stream().map(Group::getId).toList());
+		groups.forEach(g -> g.setVote(votes.get(g.getId())));
+		return groups;
+	}
+	
+	/**
+	 * Metodo per le analisi dei dati.
+	 * Raccoglie i dati di tutti gli insiemi pubblicati
+	 * in un certo intervallo e in un certo comune,
+	 * filtrati direttamente dalla query
+	 * @param cityId luogo di pubblicazione
+	 * @param from inizio dell'intervallo, incluso
+	 * @param to fine dell'intervallo, escluso
+	 * @param onlyUsers se ignorare i contenuti dello staff
+	 * @return dati per le analisi
+	 */
+	public List<ContentData> getDataForAnalysis(String cityId, LocalDateTime from, LocalDateTime to, boolean onlyUsers) {
+		if(cityId == null || from == null || to == null)
+			return null;
+		return this.groupRepository.findDataForAnalysis(cityId, from, to, onlyUsers);
 	}
 	
 	/**
-	 * metodo per ottenere un gruppo conoscendone l'id
+	 * metodo per ottenere un gruppo conoscendone l'id.
+	 * la visualizzazione viene contata con un aggiornamento,
+	 * cosi' che un gruppo appena scaduto non venga ricreato
 	 * @param groupId id del gruppo
 	 * @return gruppo ricercato se esiste, altrimenti null
 	 */
 	public Group viewGroup(String groupId) {
 		if(groupId == null)
 			return null;
-		Group group = getStreamOfAll()
-				.filter(g -> g.getId().equals(groupId))
-				.findFirst().orElse(null);
+		if(this.transactions.execute(status -> this.groupRepository.addView(groupId)) == 0)
+			return null;
+		Group group = this.groupRepository.findById(groupId).orElse(null);
 		if(group == null)
 			return null;
-		group.addOneView();
 		group.setVote(this.mediator.getVoteOf(groupId));
-		this.groupRepository.save(group);
+		this.mediator.contentViewed(groupId);
 		return group;
 	}
 	
@@ -313,7 +391,7 @@ public class GroupHandler implements AuthorProvider {
 	 * @return lista degli id dei gruppi
 	 */
 	public List<String> viewGroupFrom(String postId, String username) {
-		return getStreamOfAll().filter(g -> g.getPosts().contains(postId))
+		return this.groupRepository.findByPost(postId).stream()
 				.filter(g -> toShow(g, username))
 				.map(g -> g.getId()).toList();
 	}
@@ -352,23 +430,59 @@ public class GroupHandler implements AuthorProvider {
 	}
 	
 	/**
-	 * metodo che controlla tutti i gruppi ed
-	 * elimina quelli a tempo e non persistenti
-	 * che sono scaduti
+	 * metodo che elimina i gruppi a tempo e non
+	 * persistenti che sono scaduti. guarda solo i gruppi
+	 * in coda con data di fine passata e li elimina
+	 * a blocchi, ognuno in una transazione
+	 * @return numero di gruppi eliminati
 	 */
-	public void checkEndingGroups() {
+	public int checkEndingGroups() {
 		LocalDateTime date = LocalDateTime.now();
-		List<Group> toDelete = new ArrayList<>();
-		getStreamOfAll()
-			.filter(g -> ! g.isPersistence()).forEach(g -> {
-				if(g.getEndTime().isBefore(date))
-					toDelete.add(g);
+		int expired = 0;
+		List<String> chunk;
+		while(!(chunk = this.endings.pollEnded(date, this.endingBatchSize)).isEmpty())
+			expired += expireGroups(chunk, date);
+		return expired;
+	}
+	
+	/**
+	 * elimina un blocco di gruppi tolti dalla coda, ricontrollandoli
+	 * con una sola query perche' potrebbero essere stati modificati
+	 * o eliminati. se la transazione fallisce, tornano in coda
+	 * @param groupIds id dei gruppi
+	 * @param date momento del controllo
+	 * @return numero di gruppi eliminati
+	 */
+	private int expireGroups(List<String> groupIds, LocalDateTime date) {
+		try {
+			return this.transactions.execute(status -> {
+				List<Group> ended = this.groupRepository.findEnded(groupIds, date);
+				if(ended.isEmpty())
+					return 0;
+				this.groupRepository.deleteAll(ended);
+				this.mediator.removeAllDataOf(ended.stream().map(Group::getId).toList());
+				return ended.size();
 			});
-		for(Group group : toDelete) {
-			removeGroup(group.getId());
+		} catch(RuntimeException e) {
+			groupIds.forEach(id -> this.endings.schedule(id, date));
+			return 0;
 		}
 	}
 	
+	/**
+	 * mette in coda un gruppo, se e' a tempo e non persistente.
+	 * va chiamato ogni volta che la fine di un gruppo puo' cambiare
+	 * @param group gruppo salvato
+	 */
+	public void scheduleEnding(Group group) {
+		if(isEnding(group))
+			this.endings.schedule(group.getId(), group.getEndTime());
+	}
+	
+	private boolean isEnding(Group group) {
+		return !group.isPersistence() && group.getEndTime() != null;
+	}
+	
 	/**
 	 * metodo per ottenere l'autore di un dato gruppo
 	 * @param groupId id del gruppo
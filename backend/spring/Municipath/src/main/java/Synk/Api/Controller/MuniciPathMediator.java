@@ -2,7 +2,9 @@ package Synk.Api.Controller;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.stereotype.Service;
 
@@ -169,6 +171,14 @@ public class MuniciPathMediator {
 		this.group.removeFromAll(post);
 	}
 	
+	/**
+	 * metodo per rimuovere da tutti i gruppi piu' post
+	 * @param posts post id da rimuovere
+	 */
+	public void removeFromAllGroups(Collection<String> posts) {
+		this.group.removeFromAll(posts);
+	}
+	
 	/**
 	 * metodo per ottenere un comune dall'id
 	 * @param cityID id del comune
@@ -225,6 +235,7 @@ public class MuniciPathMediator {
 	public void deleteCity(String cityId) {
     	this.user.discreditCurator(cityId);
     	this.point.deleteCityPoints(cityId);
+    	this.analysis.removeAllFromCity(cityId);
 	}
 	
 	public void updateCityPrime(City city, Position oldPos) {
@@ -339,6 +350,16 @@ public class MuniciPathMediator {
 		return this.feedback.getFeedback(id);
 	}
 	
+	/**
+	 * metodo per ricevere i voti di
+	 * piu' contenuti insieme
+	 * @param ids id dei contenuti
+	 * @return voto di ogni contenuto, per id
+	 */
+	public Map<String, Score> getVotesOf(Collection<String> ids) {
+		return this.feedback.getFeedback(ids);
+	}
+	
 	/**
 	 * metodo per controllare se un dato contenuto
 	 * esiste o meno
@@ -411,6 +432,7 @@ public class MuniciPathMediator {
 	 */
 	public void notifyCreation(MetaData data) {
 		this.user.notifyCreation(data);
+		this.analysis.contentChanged(data.getCityId());
 	}
 	
 	/**
@@ -422,6 +444,38 @@ public class MuniciPathMediator {
 	public void removeAllDataOf(String contentId) {
 		this.feedback.removeAllFeedbackOf(contentId);
 		this.saved.removeAllFromContent(contentId);
+		this.analysis.contentChanged(idManager.getCityId(contentId));
+	}
+	
+	/**
+	 * metodo per rimuovere tutti i salvataggi
+	 * di feedback e di contenuti di piu' contenuti
+	 * destinati alla eliminazione
+	 * @param contentIds id dei contenuti
+	 */
+	public void removeAllDataOf(Collection<String> contentIds) {
+		this.feedback.removeAllFeedbackOf(contentIds);
+		this.saved.removeAllFromContent(contentIds);
+		contentIds.stream().map(idManager::getCityId).distinct()
+			.forEach(this.analysis::contentChanged);
+	}
+	
+	/**
+	 * metodo per segnalare che un contenuto
+	 * e' stato votato
+	 * @param contentId id del contenuto
+	 */
+	public void contentVoted(String contentId) {
+		this.analysis.contentChanged(idManager.getCityId(contentId));
+	}
+	
+	/**
+	 * metodo per segnalare che un contenuto
+	 * e' stato visualizzato
+	 * @param contentId id del contenuto
+	 */
+	public void contentViewed(String contentId) {
+		this.analysis.contentViewed(idManager.getCityId(contentId));
 	}
 	
 	/**
@@ -436,20 +490,17 @@ public class MuniciPathMediator {
 	
 	/**
 	 * metodo per ottenere tutti 
-	 * i contenuti in una certa
-	 * distanza temporale
+	 * i contenuti pubblicati in
+	 * un certo intervallo
 	 * @param cityId id del comune da controllare
-	 * @param months numero di mesi in cui scavare
+	 * @param from inizio dell'intervallo, incluso
+	 * @param to fine dell'intervallo, escluso
 	 * @param onlyUsers se ignorare i cotenuti dello staff
 	 * @return i contenuti richiesti
 	 */
-	public List<MetaData> getDataForAnalysis(String cityId, int months, boolean onlyUsers) {
-		LocalDateTime from = LocalDateTime.now().minusMonths(months);
-		List<MetaData> list = new ArrayList<>();
-		list.addAll(this.point.getPosts(cityId, from));
-		list.addAll(this.group.viewGroups(cityId, from));
-		if(onlyUsers)
-			list = new ArrayList<>(list.stream().parallel().filter(d -> !d.isOfCity()).toList());
+	public List<MetaData> getDataForAnalysis(String cityId, LocalDateTime from, LocalDateTime to, boolean onlyUsers) {
+		List<MetaData> list = new ArrayList<>(this.point.getDataForAnalysis(cityId, from, to, onlyUsers));
+		list.addAll(this.group.getDataForAnalysis(cityId, from, to, onlyUsers));
 		return list;
 	}
 	
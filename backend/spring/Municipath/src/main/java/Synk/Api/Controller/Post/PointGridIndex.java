@@ -0,0 +1,194 @@
+package Synk.Api.Controller.Post;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import Synk.Api.Model.Post.Point;
+import Synk.Api.Model.Post.Position;
+
+/**
+ * indice spaziale in memoria dei punti, diviso per comune.
+ * ogni comune ha una griglia uniforme di celle quadrate
+ * (in gradi di latitudine e longitudine) che contengono
+ * gli id dei punti che vi cadono dentro, cosi' da poter
+ * rispondere alle ricerche per area visibile della mappa
+ * senza scorrere tutti i punti del comune.
+ */
+public class PointGridIndex {
+
+	/**
+	 * lato di una cella in gradi, circa un chilometro
+	 */
+	private final double cellSize;
+	/**
+	 * griglie gia' caricate, per id del comune
+	 */
+	private final Map<String, CityGrid> grids;
+
+	public PointGridIndex() {
+		this(0.01);
+	}
+
+	public PointGridIndex(double cellSize) {
+		this.cellSize = cellSize;
+		this.grids = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * metodo per ottenere gli id dei punti di un comune che cadono
+	 * nel rettangolo individuato da due angoli opposti. se la griglia
+	 * del comune non e' ancora in memoria viene costruita una sola volta
+	 * con i punti forniti dal loader.
+	 * @param cityId id del comune
+	 * @param corner primo angolo del rettangolo
+	 * @param opposite angolo opposto del rettangolo
+	 * @param loader fornitore dei punti del comune, usato al primo accesso
+	 * @return id dei punti contenuti nel rettangolo
+	 */
+	public List<String> search(String cityId, Position corner, Position opposite, Supplier<List<Point>> loader) {
+		CityGrid grid = this.grids.computeIfAbsent(cityId, id -> build(loader.get()));
+		return grid.search(Math.min(corner.getLat(), opposite.getLat()), Math.max(corner.getLat(), opposite.getLat()),
+				Math.min(corner.getLng(), opposite.getLng()), Math.max(corner.getLng(), opposite.getLng()));
+	}
+
+	/**
+	 * inserisce un punto nella griglia del suo comune,
+	 * se questa e' gia' stata caricata
+	 * @param point punto da inserire
+	 */
+	public void add(Point point) {
+		this.grids.computeIfPresent(point.getCityId(), (id, grid) -> {
+			grid.add(point.getPointId(), point.getPos());
+			return grid;
+		});
+	}
+
+	/**
+	 * rimuove un punto dalla griglia del suo comune,
+	 * se questa e' gia' stata caricata
+	 * @param point punto da rimuovere
+	 */
+	public void remove(Point point) {
+		this.grids.computeIfPresent(point.getCityId(), (id, grid) -> {
+			grid.remove(point.getPointId());
+			return grid;
+		});
+	}
+
+	/**
+	 * sposta un punto sotto un nuovo id e una nuova posizione,
+	 * come avviene per il punto prime quando il comune si sposta
+	 * @param oldPointId vecchio id del punto
+	 * @param point punto con i dati aggiornati
+	 */
+	public void move(String oldPointId, Point point) {
+		this.grids.computeIfPresent(point.getCityId(), (id, grid) -> {
+			grid.remove(oldPointId);
+			grid.add(point.getPointId(), point.getPos());
+			return grid;
+		});
+	}
+
+	/**
+	 * elimina la griglia di un comune
+	 * @param cityId id del comune
+	 */
+	public void removeCity(String cityId) {
+		this.grids.remove(cityId);
+	}
+
+	/**
+	 * costruisce la griglia di un comune a partire dai suoi punti
+	 * @param points punti del comune
+	 * @return griglia costruita
+	 */
+	private CityGrid build(List<Point> points) {
+		CityGrid grid = new CityGrid();
+		points.forEach(p -> grid.add(p.getPointId(), p.getPos()));
+		return grid;
+	}
+
+	/**
+	 * calcola l'indice di riga o colonna di una coordinata
+	 * @param coordinate latitudine o longitudine
+	 * @return indice della cella lungo quell'asse
+	 */
+	private int cellOf(double coordinate) {
+		return (int) Math.floor(coordinate / this.cellSize);
+	}
+
+	/**
+	 * compone la chiave di una cella a partire da riga e colonna
+	 * @param row indice della latitudine
+	 * @param column indice della longitudine
+	 * @return chiave della cella
+	 */
+	private static long key(int row, int column) {
+		return ((long) row << 32) | (column & 0xffffffffL);
+	}
+
+	/**
+	 * griglia dei punti di un singolo comune
+	 */
+	private class CityGrid {
+
+		private final Map<Long, Set<String>> cells = new ConcurrentHashMap<>();
+		private final Map<String, Position> positions = new ConcurrentHashMap<>();
+
+		private void add(String pointId, Position pos) {
+			Position old = this.positions.put(pointId, pos);
+			if(old != null)
+				removeFromCell(pointId, old);
+			this.cells.computeIfAbsent(key(cellOf(pos.getLat()), cellOf(pos.getLng())),
+					k -> ConcurrentHashMap.newKeySet()).add(pointId);
+		}
+
+		private void remove(String pointId) {
+			Position old = this.positions.remove(pointId);
+			if(old != null)
+				removeFromCell(pointId, old);
+		}
+
+		private void removeFromCell(String pointId, Position pos) {
+			this.cells.computeIfPresent(key(cellOf(pos.getLat()), cellOf(pos.getLng())), (k, set) -> {
+				set.remove(pointId);
+				return set.isEmpty() ? null : set;
+			});
+		}
+
+		/**
+		 * se il rettangolo copre meno celle di quelle occupate si visitano
+		 * solo le sue celle, altrimenti (mappa molto rimpicciolita) si
+		 * scorrono direttamente le celle occupate.
+		 */
+		private List<String> search(double minLat, double maxLat, double minLng, double maxLng) {
+			List<String> result = new ArrayList<>();
+			int fromRow = cellOf(minLat), toRow = cellOf(maxLat);
+			int fromCol = cellOf(minLng), toCol = cellOf(maxLng);
+			long covered = (long) (toRow - fromRow + 1) * (toCol - fromCol + 1);
+			if(covered <= this.cells.size()) {
+				for(int row = fromRow; row <= toRow; row++)
+					for(int col = fromCol; col <= toCol; col++)
+						collect(this.cells.get(key(row, col)), minLat, maxLat, minLng, maxLng, result);
+			} else this.cells.values().forEach(set -> collect(set, minLat, maxLat, minLng, maxLng, result));
+			return result;
+		}
+
+		private void collect(Set<String> cell, double minLat, double maxLat,
+				double minLng, double maxLng, List<String> result) {
+			if(cell == null)
+				return;
+			for(String pointId : cell) {
+				Position pos = this.positions.get(pointId);
+				if(pos != null && pos.getLat() >= minLat && pos.getLat() <= maxLat
+						&& pos.getLng() >= minLng && pos.getLng() <= maxLng)
+					result.add(pointId);
+			}
+		}
+	}
+
+}
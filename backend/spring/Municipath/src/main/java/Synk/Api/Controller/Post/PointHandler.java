@@ -1,19 +1,32 @@
 package Synk.Api.Controller.Post;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import Synk.Api.Controller.AuthorProvider;
+import Synk.Api.Controller.EndingQueue;
 import Synk.Api.Controller.IdentifierManager;
 import Synk.Api.Controller.MuniciPathMediator;
 import Synk.Api.Controller.Post.Contribute.ContributeHandler;
+import Synk.Api.Controller.WeatherService.AsyncWeatherForecast;
+import Synk.Api.Controller.WeatherService.WeatherForecast;
 import Synk.Api.Controller.WeatherService.WeatherForecastProxy;
 import Synk.Api.Controller.WeatherService.WeatherService;
+import Synk.Api.Controller.WeatherService.WeatherStubServer;
+import Synk.Api.Model.Analysis.ContentData;
 import Synk.Api.Model.City.City;
+import Synk.Api.Model.Feedback.Score;
 import Synk.Api.Model.Pending.PendingRequest;
 import Synk.Api.Model.Post.Point;
 import Synk.Api.Model.Post.Position;
@@ -23,12 +36,15 @@ import Synk.Api.Model.Post.PostRepository;
 import Synk.Api.Model.Post.PostType;
 import Synk.Api.Model.Post.Contribute.Contribute;
 import Synk.Api.View.ViewModel.ProtoPost;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
 @Service
 public class PointHandler implements AuthorProvider {
 
 	private final Integer CONTR_NOT_AUTH_LEVEL = 2;
 	private final Integer CONTR_AUTH_LEVEL = 3;
+	private final int MAX_POST_ID_ATTEMPTS = 50;
 	/**
 	 * il servizio meteo e il mediator,
 	 * che collega la classe con
@@ -37,8 +53,20 @@ public class PointHandler implements AuthorProvider {
     private WeatherService weather;
     private MuniciPathMediator mediator;
     private IdentifierManager idManager;
-    private PostCreator normalCreator, eventCreator, contestCreator;
     private PostValidator validator;
+    private PointGridIndex grid;
+    private WeatherStubServer weatherStub;
+    /**
+     * eventi non persistenti in attesa della loro fine
+     */
+    private EndingQueue endings;
+    
+    /**
+     * se vero, il meteo viene chiesto ad un server locale
+     * di prova invece che al servizio reale
+     */
+    @Value("${municipath.weather.stub:false}")
+    private boolean useWeatherStub;
     
     /**
      * beans iniettati per la persistenza
@@ -49,6 +77,14 @@ public class PointHandler implements AuthorProvider {
     private ContributeHandler contributes;
 	@Autowired
 	private PostRepository postRepository;
+	@Autowired
+	private TransactionTemplate transactions;
+	
+	/**
+	 * eventi scaduti eliminati in una sola transazione
+	 */
+	@Value("${municipath.ending.batch-size:100}")
+	private int endingBatchSize;
     
 	/**
 	 * costruttore della classe. inizializza la mappa
@@ -56,12 +92,51 @@ public class PointHandler implements AuthorProvider {
 	 * previsioni meteo.
 	 */
     public PointHandler() {
-        weather = new WeatherForecastProxy();
+        weather = new AsyncWeatherForecast(new WeatherForecastProxy());
         idManager = new IdentifierManager();
-        normalCreator = new NormalPostCreator();
-        eventCreator = new EventPostCreator();
-        contestCreator = new ContestPostCreator();
         validator = new PostValidator();
+        grid = new PointGridIndex();
+        endings = new EndingQueue();
+    }
+    
+    /**
+     * ricostruisce la coda degli eventi a tempo da quelli salvati
+     */
+    @PostConstruct
+    public void loadEndings() {
+    	this.postRepository.findByPersistenceFalseAndTypeAndEndTimeNotNull(PostType.EVENT)
+    		.forEach(p -> this.endings.schedule(p.getId(), p.getEndTime()));
+    }
+    
+    /**
+     * avvia, se richiesto, il server meteo locale di prova
+     * e ci collega il servizio meteo
+     * @throws IOException se il server non puo' essere avviato
+     */
+    @PostConstruct
+    public void startWeatherStub() throws IOException {
+    	if(!this.useWeatherStub)
+    		return;
+    	this.weatherStub = new WeatherStubServer(50);
+    	stopWeather();
+    	this.weather = new AsyncWeatherForecast(new WeatherForecastProxy(new WeatherForecast(
+    			this.weatherStub.getUrl(), TimeUnit.HOURS.toMillis(12)), TimeUnit.HOURS.toMillis(12), 10000));
+    }
+    
+    /**
+     * ferma i thread del servizio meteo e, se avviato,
+     * il server meteo locale di prova
+     */
+    @PreDestroy
+    public void stopWeatherStub() {
+    	stopWeather();
+    	if(this.weatherStub != null)
+    		this.weatherStub.stop();
+    }
+    
+    private void stopWeather() {
+    	if(this.weather instanceof AsyncWeatherForecast async)
+    		async.shutdown();
     }
     
     /**
@@ -90,14 +165,12 @@ public class PointHandler implements AuthorProvider {
 		PostCreator creator = buildingPost(author, pos, level, post);
     	if(!creator.correctPost())
     		return false;
-        Point point = this.pointRepository.findById(cityId+"."+pos);
-        if(point == null)
-        	point = new Point(pos, cityId);
-    	creator.setIds(point.getNewPostId(), point.getPointId(), cityId);
     	Post newPost = creator.createPost();
-        point.getPosts().add(newPost);
-        postRepository.save(newPost);
-    	pointRepository.save(point);
+        Point point = savePostOnPoint(newPost, pos, cityId);
+        if(point == null)
+        	return false;
+    	this.grid.add(point);
+    	scheduleEnding(newPost);
         if(level == CONTR_NOT_AUTH_LEVEL)
         	this.mediator.addPending(newPost.getId());
         else this.mediator.notifyCreation(newPost);
@@ -106,6 +179,41 @@ public class PointHandler implements AuthorProvider {
 	
 	
 
+	/**
+	 * riserva un nuovo id di post nel punto indicato, creando il
+	 * punto se non esiste, e salva il post. punto e post vengono
+	 * salvati nella stessa transazione: se nel frattempo un'altra
+	 * richiesta ha modificato, creato o eliminato il punto, il
+	 * salvataggio fallisce e si riprova con il punto aggiornato.
+	 * cosi' due post non ricevono mai lo stesso id e un punto
+	 * non viene mai eliminato tra la riserva dell'id e il post
+	 * @param post post da salvare, a cui assegnare gli id
+	 * @param pos posizione del post
+	 * @param cityId id del comune
+	 * @return punto con il nuovo post, null se non e' stato possibile
+	 */
+	private Point savePostOnPoint(Post post, Position pos, String cityId) {
+		for(int attempt = 1; attempt <= MAX_POST_ID_ATTEMPTS; attempt++) {
+			try {
+				return this.transactions.execute(status -> {
+					Point point = this.pointRepository.findById(cityId+"."+pos);
+					if(point == null)
+						point = new Point(pos, cityId);
+					post.setId(point.getNewPostId());
+					post.setPointId(point.getPointId());
+					post.setCityId(cityId);
+					this.pointRepository.save(point);
+					this.postRepository.save(post);
+					point.getPosts().add(post);
+					return point;
+				});
+			} catch(OptimisticLockingFailureException | DataIntegrityViolationException e) {
+				continue;
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * metodo che inserisce le corrette informazioni dentro ad un post
 	 * @param author autore del post
@@ -124,13 +232,16 @@ public class PointHandler implements AuthorProvider {
 	}
 	
 	/**
-	 * metodo per scegliere il creator giusto per un post
+	 * metodo per scegliere il creator giusto per un post.
+	 * ne crea sempre uno nuovo, perche' il creator tiene
+	 * il post in costruzione e non puo' essere condiviso
+	 * tra richieste contemporanee
 	 * @param type tipo di post
 	 * @return creator adatto al post
 	 */
 	private PostCreator getRightCreator(PostType type) {
-		return type == PostType.EVENT ? this.eventCreator : type == PostType.CONTEST ?
-				this.contestCreator : this.normalCreator;
+		return type == PostType.EVENT ? new EventPostCreator() : type == PostType.CONTEST ?
+				new ContestPostCreator() : new NormalPostCreator();
 	}
     
     /**
@@ -154,6 +265,7 @@ public class PointHandler implements AuthorProvider {
             checkContest(post.getId(), post.getType(), data.getType());
     		post.updateInfo(data);
             postRepository.save(post);
+            scheduleEnding(post);
     	}
     	else this.mediator.addPostPending(postId, data);
         return true;
@@ -177,6 +289,7 @@ public class PointHandler implements AuthorProvider {
         checkContest(post.getId(), post.getType(), data.getType());
     	post.updateInfo(data);
         postRepository.save(post);
+        scheduleEnding(post);
         String cityName = this.mediator.getNameOfCity(post.getCityId());
         this.mediator.send(cityName, post.getId(), "Il tuo post è stato modificato dal comune.", post.getAuthor());
         return true;
@@ -195,6 +308,7 @@ public class PointHandler implements AuthorProvider {
         checkContest(post.getId(), post.getType(), request.getType());
     	post.updateInfo(request);
         postRepository.save(post);
+        scheduleEnding(post);
     }
     
 
@@ -205,11 +319,13 @@ public class PointHandler implements AuthorProvider {
 	public void updatePrime(City city, Position oldPos) {
 		Post post = this.postRepository.findById(city.getId()+"."+oldPos+".0").get();
 		Point point = this.pointRepository.findById(post.getPointId());
-		this.pointRepository.deleteById(point.getPointId());
+		String oldPid = point.getPointId();
+		this.pointRepository.deleteById(oldPid);
 		this.postRepository.deleteById(post.getId());
 		point.setPos(city.getPos());
 		String pid = city.getId()+"."+city.getPos();
 		point.setPointId(pid);
+		point.setVersion(null);
 		post.setPos(city.getPos());
 		post.setAuthor(city.getCurator());
 		post.setTitle("Comune di "+city.getName());
@@ -217,6 +333,7 @@ public class PointHandler implements AuthorProvider {
 		post.setId(pid+".0");
 		postRepository.save(post);
 		pointRepository.save(point);
+		this.grid.move(oldPid, point);
 	}
 	
 	/**
@@ -245,7 +362,29 @@ public class PointHandler implements AuthorProvider {
         return this.pointRepository.findByCityId(cityId).stream()
         		  .filter( p -> p.getPosts().stream().anyMatch(po -> toShow(po, username))).toList();
     }
-    
+
+    /**
+     * metodo che ritorna i punti di una citta' visibili
+     * nell'area della mappa mostrata dal client, individuata
+     * da due angoli opposti. la ricerca passa per l'indice
+     * spaziale, quindi vengono letti solo i punti dell'area.
+     * @param cityId id del comune
+     * @param username nome utente
+     * @param corner primo angolo dell'area
+     * @param opposite angolo opposto dell'area
+     * @return lista di punti
+     */
+    public List<Point> getPoints (String cityId, String username, Position corner, Position opposite) {
+    	if(cityId == null || corner == null || opposite == null)
+    		return null;
+    	List<String> ids = this.grid.search(cityId, corner, opposite,
+    			() -> this.pointRepository.findByCityIdWithoutPosts(cityId));
+    	if(ids.isEmpty())
+    		return new ArrayList<>();
+    	return this.pointRepository.findAllById(ids).stream()
+    			.filter( p -> p.getPosts().stream().anyMatch(po -> toShow(po, username))).toList();
+    }
+
     /**
      * aggiorna le informazioni di un dato post
      * con il meteo attuale e i gruppi di cui fa parte
@@ -278,6 +417,7 @@ public class PointHandler implements AuthorProvider {
         		p.forEach(po -> this.mediator.removeAllDataOf(po.getId()));
         		this.postRepository.deleteAll(p);
         		});
+        this.grid.removeCity(cityId);
         this.mediator.removeAllCityGroups(cityId);
     }
     
@@ -314,7 +454,9 @@ public class PointHandler implements AuthorProvider {
     
     /**
      * metodo per ottenere un post. il metodo e' destinato
-     * ad essere usato dal controller
+     * ad essere usato dal controller. la visualizzazione viene
+     * contata con un aggiornamento, cosi' che un evento appena
+     * scaduto non venga ricreato
      * @param postId id del post
      * @param username nome utente
      * @return post ricercato
@@ -322,11 +464,12 @@ public class PointHandler implements AuthorProvider {
     public Post getPost(String postId, String username) {
     	if(postId == null)
     		return null;
+    	if(this.transactions.execute(status -> this.postRepository.addView(postId)) == 0)
+    		return null;
     	Post post = postRepository.findById(postId).orElse(null);
     	if(post == null)
     		return null;
-    	post.addOneView();
-    	this.postRepository.save(post);
+    	this.mediator.contentViewed(postId);
     	return updatePost(post, username);
     }
     
@@ -379,22 +522,29 @@ public class PointHandler implements AuthorProvider {
     }
     
     /**
-     * metodo privato con la logica dell'eliminazione
+     * metodo privato con la logica dell'eliminazione. il post,
+     * i suoi riferimenti e il punto rimasto vuoto vengono eliminati
+     * nella stessa transazione: il punto viene bloccato dopo aver
+     * eliminato il post e prima di controllare se e' vuoto, cosi'
+     * che un post salvato nel frattempo lo tenga e che un punto
+     * ricreato non riceva l'id di un post ancora da eliminare
      * @param post post da eliminare
      * @return true se il post e' stato eliminato. false altrimenti
      */
     private boolean deletePost(Post post) {
     	if(post.getType() == PostType.CONTEST)
     		this.contributes.removeContest(post.getId());
-    	Point point = this.pointRepository.findById(post.getPointId());
-    	this.postRepository.save(post);
-    	point.getPosts().remove(post);
-    	if(point.getPosts().isEmpty()) {
-        	this.pointRepository.delete(point);
-    	} else this.pointRepository.save(point);
-    	this.postRepository.delete(post);
-    	this.mediator.removeFromAllGroups(post.getId());
-    	this.mediator.removeAllDataOf(post.getId());
+    	List<Point> emptied = this.transactions.execute(status -> {
+    		this.postRepository.delete(post);
+    		this.mediator.removeFromAllGroups(post.getId());
+    		this.mediator.removeAllDataOf(post.getId());
+    		List<Point> points = this.pointRepository.findAllByIdForUpdate(List.of(post.getPointId()));
+    		if(points.isEmpty() || !this.postRepository.findUsedPointIds(List.of(post.getPointId())).isEmpty())
+    			return List.<Point>of();
+    		this.pointRepository.deleteAll(points);
+    		return points;
+    	});
+    	emptied.forEach(this.grid::remove);
     	return true;
     }
     
@@ -437,11 +587,28 @@ public class PointHandler implements AuthorProvider {
 	public List<Post> getPosts(String cityId, LocalDateTime from) {
 		if(cityId == null || from == null)
 			return null;
-		return this.postRepository.findByCityId(cityId).stream()
-				.filter(p -> p.getPublicationTime().isAfter(from))
-				.map(p -> {
-					p.setVote(this.mediator.getVoteOf(p.getId())); 
-					return p;}).toList();
+		List<Post> posts = this.postRepository.findByCityId(cityId).stream()
+				.filter(p -> p.getPublicationTime().isAfter(from)).toList();
+		Map<String, Score> votes = this.mediator.getVotesOf(posts.stream().map(Post::getId).toList());
+		posts.forEach(p -> p.setVote(votes.get(p.getId())));
+		return posts;
+	}
+	
+	/**
+	 * Metodo per le analisi dei dati.
+	 * Raccoglie i dati di tutti i post pubblicati
+	 * in un certo intervallo e in un certo comune,
+	 * filtrati direttamente dalla query
+	 * @param cityId luogo di pubblicazione
+	 * @param from inizio dell'intervallo, incluso
+	 * @param to fine dell'intervallo, escluso
+	 * @param onlyUsers se ignorare i contenuti dello staff
+	 * @return dati per le analisi
+	 */
+	public List<ContentData> getDataForAnalysis(String cityId, LocalDateTime from, LocalDateTime to, boolean onlyUsers) {
+		if(cityId == null || from == null || to == null)
+			return null;
+		return this.postRepository.findDataForAnalysis(cityId, from, to, onlyUsers);
 	}
 	
 	/**
@@ -562,20 +729,73 @@ public class PointHandler implements AuthorProvider {
 	/**
 	 * metodo che si assicura che tutti gli eventi finiti
 	 * che non hanno persistenza vengano rimossi dal sistema.
+	 * guarda solo gli eventi in coda con data di fine passata
+	 * e li elimina a blocchi, ognuno in una transazione
+	 * @return numero di eventi eliminati
 	 */
-	public void checkEndingPosts() {
+	public int checkEndingPosts() {
 		LocalDateTime date = LocalDateTime.now();
-		List<Post> toDelete = new ArrayList<>();
-		pointRepository.findAll().stream().parallel()
-				.map(poi -> poi.getPosts()).forEach( l -> l.stream()
-				.filter(pos -> ! pos.isPersistence())
-				.filter(pos -> pos.getType() == PostType.EVENT)
-				.forEach(pos -> {
-					if(pos.getEndTime().isBefore(date))
-						toDelete.add(pos); }));
-		for(Post post : toDelete) {
-			deletePost(post.getId());
+		int expired = 0;
+		List<String> chunk;
+		while(!(chunk = this.endings.pollEnded(date, this.endingBatchSize)).isEmpty())
+			expired += expirePosts(chunk, date);
+		return expired;
+	}
+	
+	/**
+	 * elimina un blocco di eventi tolti dalla coda. vengono
+	 * ricontrollati con una sola query, perche' potrebbero essere
+	 * stati modificati o eliminati, poi post, riferimenti nei gruppi,
+	 * voti, salvataggi e punti rimasti vuoti vengono eliminati nella
+	 * stessa transazione. i punti vengono bloccati prima di controllare
+	 * se sono vuoti, cosi' che un post salvato nel frattempo li tenga.
+	 * se la transazione fallisce, gli eventi tornano in coda
+	 * @param postIds id degli eventi
+	 * @param date momento del controllo
+	 * @return numero di eventi eliminati
+	 */
+	private int expirePosts(List<String> postIds, LocalDateTime date) {
+		int[] expired = new int[1];
+		List<Point> emptied;
+		try {
+			emptied = this.transactions.execute(status -> {
+				List<Post> ended = this.postRepository.findEnded(postIds, PostType.EVENT, date);
+				expired[0] = ended.size();
+				if(ended.isEmpty())
+					return List.<Point>of();
+				List<String> ids = ended.stream().map(Post::getId).toList();
+				this.postRepository.deleteAll(ended);
+				this.mediator.removeFromAllGroups(ids);
+				this.mediator.removeAllDataOf(ids);
+				List<Point> points = this.pointRepository.findAllByIdForUpdate(
+						ended.stream().map(Post::getPointId).distinct().toList());
+				if(points.isEmpty())
+					return points;
+				List<String> used = this.postRepository.findUsedPointIds(points.stream().map(Point::getPointId).toList());
+				List<Point> empty = points.stream().filter(p -> !used.contains(p.getPointId())).toList();
+				this.pointRepository.deleteAll(empty);
+				return empty;
+			});
+		} catch(RuntimeException e) {
+			postIds.forEach(id -> this.endings.schedule(id, date));
+			return 0;
 		}
+		emptied.forEach(this.grid::remove);
+		return expired[0];
+	}
+	
+	/**
+	 * mette in coda un post, se e' un evento non persistente.
+	 * va chiamato ogni volta che la fine di un post puo' cambiare
+	 * @param post post salvato
+	 */
+	public void scheduleEnding(Post post) {
+		if(isEnding(post))
+			this.endings.schedule(post.getId(), post.getEndTime());
+	}
+	
+	private boolean isEnding(Post post) {
+		return !post.isPersistence() && post.getType() == PostType.EVENT && post.getEndTime() != null;
 	}
 	
 	/**
@@ -4,6 +4,7 @@ import Synk.Api.Controller.MuniciPathMediator;
 
 import Synk.Api.Model.SavedContent.SavedContent;
 
+import java.util.Collection;
 import java.util.List;
 
 import Synk.Api.Model.SavedContent.SavedContentRepository;
@@ -112,4 +113,15 @@ public class SavedContentHandler {
 		this.savedContentRepository.deleteAll(list);
 	}
 	
+	/**
+	 * metodo per rimuovere piu' contenuti da
+	 * tutte le liste dei contenuti salvati
+	 * @param contentIds contenuti da rimuovere
+	 */
+	public void removeAllFromContent(Collection<String> contentIds) {
+		if(contentIds == null || contentIds.isEmpty())
+    		return;
+		this.savedContentRepository.deleteAll(savedContentRepository.findByContentIdIn(contentIds));
+	}
+	
 }
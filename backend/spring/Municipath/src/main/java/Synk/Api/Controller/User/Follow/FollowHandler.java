@@ -105,6 +105,49 @@ public class FollowHandler {
 				.map(f -> f.getUsername()).toList();
 	}
 
+	/**
+	 * @param followed comune o contributor seguito
+	 * @return numero di utenti che lo seguono
+	 */
+	public long countFollowers(String followed) {
+		return this.followRepository.countByFollowed(followed);
+	}
+
+	/**
+	 * @param cityId id del comune
+	 * @return chiave con cui il comune firma le notifiche uniche
+	 */
+	public String citySource(String cityId) {
+		return "c." + cityId;
+	}
+
+	/**
+	 * @param author username del contributor
+	 * @return chiave con cui il contributor firma le notifiche uniche
+	 */
+	public String contributorSource(String author) {
+		return "u." + author;
+	}
+
+	/**
+	 * @param data contenuto
+	 * @return chiave del comune o del contributor a cui appartiene il contenuto
+	 */
+	public String source(MetaData data) {
+		return data.isOfCity() ? citySource(data.getCityId()) : contributorSource(data.getAuthor());
+	}
+
+	/**
+	 * @param username utente
+	 * @return chiavi di tutti i comuni e contributor seguiti dall'utente
+	 */
+	public List<String> getFollowedSources(String username) {
+		return this.followRepository.findByUsername(username).stream()
+				.map(f -> this.idManager.isCityFollowing(f.getId()) ?
+						citySource(f.getFollowed()) : contributorSource(f.getFollowed()))
+				.toList();
+	}
+
 	public void deleteUser(String username) {
 		List<Follow> list = this.followRepository.findByUsername(username);
 		this.followRepository.deleteAll(list);
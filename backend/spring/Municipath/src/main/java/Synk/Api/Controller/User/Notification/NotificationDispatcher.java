@@ -0,0 +1,171 @@
+package Synk.Api.Controller.User.Notification;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import Synk.Api.Model.User.Notification.Notification;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * consegna in sottofondo le notifiche destinate a molti utenti.
+ * ogni evento viene messo in una coda limitata: se la coda e' piena
+ * chi notifica aspetta, cosi' che la memoria non cresca senza limite.
+ * un thread dedicato divide i destinatari in blocchi e salva ogni
+ * blocco con un solo inserimento a lotti, riprovando se fallisce.
+ */
+public class NotificationDispatcher {
+
+	private final Consumer<List<Notification>> store;
+	private final int batchSize, maxAttempts;
+	private final BlockingQueue<FanOut> queue;
+	private final Thread worker;
+	private volatile boolean running;
+	/**
+	 * notifiche accodate e non ancora salvate
+	 */
+	private final AtomicLong pending;
+	/**
+	 * metriche: tempo tra l'accodamento di un evento e la sua
+	 * consegna completa, notifiche salvate e notifiche perse
+	 */
+	private final Timer latency;
+	private final Counter delivered, failed;
+
+	/**
+	 * @param store salvataggio di un blocco di notifiche
+	 * @param batchSize numero di notifiche salvate insieme
+	 * @param capacity numero massimo di eventi in attesa
+	 * @param maxAttempts tentativi per ogni blocco prima di scartarlo
+	 * @param registry registro su cui pubblicare le metriche
+	 */
+	public NotificationDispatcher(Consumer<List<Notification>> store, int batchSize, int capacity,
+			int maxAttempts, MeterRegistry registry) {
+		this.store = store;
+		this.batchSize = batchSize;
+		this.maxAttempts = maxAttempts;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.pending = new AtomicLong();
+		Gauge.builder("municipath.notifications.queue", this.queue, BlockingQueue::size)
+				.description("eventi in attesa di consegna").register(registry);
+		Gauge.builder("municipath.notifications.pending", this.pending, AtomicLong::get)
+				.description("notifiche in attesa di essere salvate").register(registry);
+		this.latency = Timer.builder("municipath.notifications.fanout")
+				.description("tempo per consegnare un evento a tutti i destinatari").register(registry);
+		this.delivered = Counter.builder("municipath.notifications.delivered").register(registry);
+		this.failed = Counter.builder("municipath.notifications.failed").register(registry);
+		this.running = true;
+		this.worker = new Thread(this::work, "notification-fanout");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * accoda un evento da consegnare. se la coda e' piena aspetta
+	 * che si liberi un posto; se viene interrotto, consegna subito
+	 * @param author autore del messaggio
+	 * @param message messaggio da inviare
+	 * @param contentId id del contenuto
+	 * @param receivers destinatari della notifica
+	 */
+	public void submit(String author, String message, String contentId, List<String> receivers) {
+		FanOut event = new FanOut(author, message, contentId, List.copyOf(receivers), System.nanoTime());
+		this.pending.addAndGet(receivers.size());
+		try {
+			this.queue.put(event);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			deliver(event);
+		}
+	}
+
+	/**
+	 * ciclo del thread di consegna: continua finche' il
+	 * dispatcher e' attivo o ci sono eventi in coda
+	 */
+	private void work() {
+		while(this.running || !this.queue.isEmpty()) {
+			try {
+				FanOut event = this.queue.poll(1, TimeUnit.SECONDS);
+				if(event != null)
+					deliver(event);
+			} catch(InterruptedException e) {
+				this.running = false;
+			}
+		}
+	}
+
+	/**
+	 * salva tutte le notifiche di un evento a blocchi
+	 * @param event evento da consegnare
+	 */
+	private void deliver(FanOut event) {
+		List<String> receivers = event.receivers();
+		for(int from = 0; from < receivers.size(); from += this.batchSize) {
+			List<Notification> batch = new ArrayList<>();
+			for(String receiver : receivers.subList(from, Math.min(from + this.batchSize, receivers.size())))
+				batch.add(new Notification(event.author(), event.message(), event.contentId(), receiver));
+			if(save(batch))
+				this.delivered.increment(batch.size());
+			else this.failed.increment(batch.size());
+			this.pending.addAndGet(-batch.size());
+		}
+		this.latency.record(System.nanoTime() - event.enqueued(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * salva un blocco di notifiche, riprovando con
+	 * un'attesa crescente se il database fallisce
+	 * @param batch notifiche da salvare
+	 * @return true se il blocco e' stato salvato
+	 */
+	private boolean save(List<Notification> batch) {
+		for(int attempt = 1; attempt <= this.maxAttempts; attempt++) {
+			try {
+				this.store.accept(batch);
+				return true;
+			} catch(RuntimeException e) {
+				if(attempt == this.maxAttempts)
+					return false;
+				try {
+					Thread.sleep(100L * attempt);
+				} catch(InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return notifiche accodate e non ancora salvate
+	 */
+	public long getPending() {
+		return this.pending.get();
+	}
+
+	/**
+	 * ferma il dispatcher dopo aver consegnato
+	 * gli eventi gia' in coda
+	 * @param timeout millisecondi massimi di attesa
+	 */
+	public void stop(long timeout) {
+		this.running = false;
+		try {
+			this.worker.join(timeout);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private record FanOut(String author, String message, String contentId,
+			List<String> receivers, long enqueued) { }
+}
@@ -1,17 +1,151 @@
 package Synk.Api.Controller.User.Notification;
 
+import Synk.Api.Model.User.Notification.Broadcast;
+import Synk.Api.Model.User.Notification.BroadcastRead;
+import Synk.Api.Model.User.Notification.BroadcastReadRepository;
+import Synk.Api.Model.User.Notification.BroadcastRepository;
 import Synk.Api.Model.User.Notification.Notification;
 import Synk.Api.Model.User.Notification.NotificationRepository;
+import Synk.Api.Model.User.Notification.UnreadCounter;
+import Synk.Api.Model.User.Notification.UnreadCounterRepository;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 @Service
 public class NotificationHandler {
 
     @Autowired
     private NotificationRepository notificationRepository;
+    @Autowired
+    private BroadcastRepository broadcastRepository;
+    @Autowired
+    private BroadcastReadRepository readRepository;
+    @Autowired
+    private UnreadCounterRepository unreadRepository;
+    @Autowired
+    private TransactionTemplate transactions;
+    
+    /**
+     * consegna in sottofondo delle notifiche per molti destinatari:
+     * dimensione dei blocchi salvati insieme, eventi massimi in coda,
+     * tentativi per blocco e numero di destinatari oltre il quale
+     * la consegna non avviene piu' durante la richiesta
+     */
+    @Value("${municipath.notifications.batch-size:500}")
+    private int batchSize;
+    @Value("${municipath.notifications.queue-capacity:1000}")
+    private int queueCapacity;
+    @Value("${municipath.notifications.max-attempts:3}")
+    private int maxAttempts;
+    @Value("${municipath.notifications.sync-threshold:50}")
+    private int syncThreshold;
+    private NotificationDispatcher dispatcher;
+    
+    /**
+     * giorni dopo i quali le notifiche dirette lette e tutte le
+     * notifiche uniche, lette o no, vengono eliminate, e pulizia periodica
+     */
+    @Value("${municipath.notifications.retention-days:30}")
+    private int retentionDays;
+    private ScheduledExecutorService cleaner;
+    
+    /**
+     * invio immediato agli utenti collegati: eventi massimi in
+     * attesa per connessione, secondi tra due eventi vuoti, minuti
+     * dopo cui il client riapre la connessione e thread di invio
+     */
+    @Value("${municipath.notifications.stream.buffer:100}")
+    private int streamBuffer;
+    @Value("${municipath.notifications.stream.heartbeat-seconds:15}")
+    private long heartbeatSeconds;
+    @Value("${municipath.notifications.stream.timeout-minutes:30}")
+    private long streamTimeout;
+    @Value("${municipath.notifications.stream.threads:4}")
+    private int streamThreads;
+    private NotificationHub hub;
+    
+    @PostConstruct
+    public void startDispatcher() {
+    	this.dispatcher = new NotificationDispatcher(this::store,
+    			this.batchSize, this.queueCapacity, this.maxAttempts, Metrics.globalRegistry);
+    	this.cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+    		Thread t = new Thread(r, "notification-retention");
+    		t.setDaemon(true);
+    		return t;
+    	});
+    	this.cleaner.scheduleAtFixedRate(this::compact, 1, 6, TimeUnit.HOURS);
+    	this.hub = new NotificationHub(this.streamBuffer, this.heartbeatSeconds,
+    			TimeUnit.MINUTES.toMillis(this.streamTimeout), this.streamThreads, Metrics.globalRegistry);
+    }
+    
+    @PreDestroy
+    public void stopDispatcher() {
+    	if(this.dispatcher != null)
+    		this.dispatcher.stop(5000);
+    	if(this.cleaner != null)
+    		this.cleaner.shutdownNow();
+    	if(this.hub != null)
+    		this.hub.stop();
+    }
+    
+    /**
+     * salva un blocco di notifiche e aggiorna, nella stessa
+     * transazione, i contatori dei non letti dei destinatari.
+     * salvato il blocco, lo manda agli utenti collegati
+     * @param batch notifiche da salvare
+     */
+    private void store(List<Notification> batch) {
+    	this.transactions.executeWithoutResult(status -> {
+    		this.notificationRepository.saveAll(batch);
+    		Map<String, Long> added = batch.stream()
+    				.collect(Collectors.groupingBy(Notification::getReceiver, Collectors.counting()));
+    		Set<String> existing = new HashSet<>();
+    		this.unreadRepository.findAllById(added.keySet()).forEach(c -> existing.add(c.getUsername()));
+    		added.entrySet().stream().filter(e -> existing.contains(e.getKey()))
+    				.collect(Collectors.groupingBy(Map.Entry::getValue,
+    						Collectors.mapping(Map.Entry::getKey, Collectors.toList())))
+    				.forEach((delta, usernames) -> this.unreadRepository.add(usernames, delta));
+    		this.unreadRepository.saveAll(added.entrySet().stream()
+    				.filter(e -> !existing.contains(e.getKey()))
+    				.map(e -> new UnreadCounter(e.getKey(), e.getValue())).toList());
+    	});
+    	batch.forEach(this.hub::publish);
+    }
+    
+    /**
+     * salva subito un blocco di notifiche. se un altro salvataggio
+     * ha appena creato il contatore di un destinatario, riprova
+     * @param batch notifiche da salvare
+     */
+    private void storeNow(List<Notification> batch) {
+    	try {
+    		store(batch);
+    	} catch(DataIntegrityViolationException e) {
+    		store(batch);
+    	}
+    }
     
     /**
      * metodo per notificare un dato contenuto
@@ -22,24 +156,78 @@ public class NotificationHandler {
      */
 	public void notify(String author, String message, String contentId, String reciver) {
         Notification n1 = new Notification(author, message, contentId, reciver);
-        notificationRepository.save(n1);
+        storeNow(List.of(n1));
 	}
 	
 	/**
 	 * motodo per notificare ad un gran numero di persone
-	 * qualcosa relativo ad un contenuto
+	 * qualcosa relativo ad un contenuto. pochi destinatari
+	 * vengono notificati subito con un solo salvataggio,
+	 * molti destinatari vengono affidati al dispatcher
 	 * @param author autore del messaggio
 	 * @param message messaggio da inviare
 	 * @param contentId id del contenuto
 	 * @param receivers destinatari della notifica
 	 */
 	public void notifyEvent(String author, String message, String contentId, List<String> receivers) {
-        List<String> l1 = receivers;
-        for (String s : l1) {
-            notify(author, message, contentId, s);
-        }
+		if(receivers.size() > this.syncThreshold && this.dispatcher != null) {
+			this.dispatcher.submit(author, message, contentId, receivers);
+			return;
+		}
+        if(!receivers.isEmpty())
+        	storeNow(receivers.stream().map(r -> new Notification(author, message, contentId, r)).toList());
     }
 	
+	/**
+	 * @return notifiche accodate e non ancora consegnate
+	 */
+	public long getPendingNotifications() {
+		return this.dispatcher == null ? 0 : this.dispatcher.getPending();
+	}
+	
+	/**
+	 * metodo per notificare un contenuto a tutti i seguaci
+	 * di un comune o di un contributor scrivendo una sola
+	 * notifica, che ogni seguace vedra' quando legge i messaggi
+	 * @param author autore del messaggio
+	 * @param message messaggio da inviare
+	 * @param contentId id del contenuto
+	 * @param source chiave del comune o del contributor seguito
+	 */
+	public void broadcast(String author, String message, String contentId, String source) {
+		this.hub.publish(this.broadcastRepository.save(new Broadcast(author, message, contentId, source)));
+	}
+	
+	/**
+	 * apre lo stream delle nuove notifiche di un utente
+	 * @param username nome utente dell'utente
+	 * @param sources chiavi dei comuni e contributor seguiti
+	 * @return stream di eventi
+	 */
+	public SseEmitter subscribe(String username, List<String> sources) {
+		return this.hub.subscribe(username, sources);
+	}
+	
+	/**
+	 * aggiorna gli stream aperti di un utente che
+	 * ha iniziato a seguire un comune o un contributor
+	 * @param username nome utente
+	 * @param source chiave del comune o contributor seguito
+	 */
+	public void follow(String username, String source) {
+		this.hub.follow(username, source);
+	}
+	
+	/**
+	 * aggiorna gli stream aperti di un utente che ha
+	 * smesso di seguire un comune o un contributor
+	 * @param username nome utente
+	 * @param source chiave del comune o contributor
+	 */
+	public void unfollow(String username, String source) {
+		this.hub.unfollow(username, source);
+	}
+	
 	/**
 	 * metodo per ottenere i messaggi di un dato utente
 	 * @param username nome utente dell'utente
@@ -50,18 +238,97 @@ public class NotificationHandler {
 	}
 	
 	/**
-	 * metodo per ottere un messaggio e leggerlo
+	 * metodo per ottenere una pagina dei messaggi di un dato utente,
+	 * insieme alle notifiche uniche di chi segue pubblicate da quando
+	 * lo segue, dalla piu' recente.
+	 * gli id seguono l'ordine di creazione, quindi la pagina successiva
+	 * si chiede passando l'id dell'ultimo messaggio ricevuto, e ogni
+	 * pagina costa una ricerca sull'indice indipendentemente da
+	 * quanti messaggi ha l'utente
+	 * @param username nome utente dell'utente
+	 * @param sources chiavi dei comuni e contributor seguiti
+	 * @param beforeId id dell'ultimo messaggio gia' letto, null per la prima pagina
+	 * @param limit numero massimo di messaggi
+	 * @return messaggi dell'utente
+	 */
+	public List<Notification> getMyMessages(String username, List<String> sources,
+			String beforeId, int limit){
+		PageRequest page = PageRequest.of(0, limit);
+		boolean first = beforeId == null;
+		List<Notification> messages = new ArrayList<>(first ?
+				this.notificationRepository.findPage(username, page) :
+				this.notificationRepository.findPageBefore(username, beforeId, page));
+		if(!sources.isEmpty()) {
+			List<Broadcast> broadcasts = first ? this.broadcastRepository.findPage(username, sources, page) :
+				this.broadcastRepository.findPageBefore(username, sources, beforeId, page);
+			Set<String> read = this.readRepository.findByUsernameAndBroadcastIdIn(username,
+					broadcasts.stream().map(Broadcast::getId).toList()).stream()
+					.map(BroadcastRead::getBroadcastId).collect(Collectors.toSet());
+			broadcasts.forEach(b -> messages.add(b.toNotification(username, read.contains(b.getId()))));
+		}
+		messages.sort(Comparator.comparing(Notification::getId).reversed());
+		return messages.size() > limit ? new ArrayList<>(messages.subList(0, limit)) : messages;
+	}
+	
+	/**
+	 * metodo per ottenere il numero di messaggi non letti di un utente.
+	 * delle notifiche uniche si contano solo quelle dei comuni e
+	 * contributor seguiti, pubblicate da quando l'utente li segue,
+	 * che non ha letto
+	 * @param username nome utente
+	 * @param sources chiavi dei comuni e contributor seguiti
+	 * @return numero di messaggi non letti
+	 */
+	public long getUnreadCount(String username, List<String> sources) {
+		long unread = this.unreadRepository.findById(username).map(UnreadCounter::getUnread).orElse(0L);
+		if(sources.isEmpty())
+			return unread;
+		return unread + this.broadcastRepository.countUnread(username, sources);
+	}
+	
+	/**
+	 * metodo per ottere un messaggio e leggerlo. il messaggio
+	 * viene segnato come letto con un solo aggiornamento
+	 * condizionato, quindi anche con letture contemporanee
+	 * il contatore dei non letti scende una volta sola
 	 * @param username nome utente
 	 * @param id id del messaggio
 	 * @return messaggio desiderato
 	 */
 	public Notification getMyMessage(String username, String id) {
-		Notification msg = notificationRepository.findById(id).orElse(null);
-		if(msg != null) {
-			msg.setRead(true);
-            notificationRepository.save(msg);
+		return this.transactions.execute(status -> {
+			boolean marked = this.notificationRepository.markRead(id) == 1;
+			Notification msg = this.notificationRepository.findById(id).orElse(null);
+			if(marked && msg != null)
+	            this.unreadRepository.add(List.of(msg.getReceiver()), -1);
+			return msg;
+		});
+	}
+	
+	/**
+	 * metodo per ottere un messaggio, anche unico, e leggerlo.
+	 * una notifica unica viene segnata come letta solo per l'utente,
+	 * e si puo' leggere solo se pubblicata da quando la segue
+	 * @param username nome utente
+	 * @param id id del messaggio
+	 * @param sources chiavi dei comuni e contributor seguiti
+	 * @return messaggio desiderato
+	 */
+	public Notification getMyMessage(String username, String id, List<String> sources) {
+		Notification msg = getMyMessage(username, id);
+		if(msg != null)
+			return msg;
+		Broadcast broadcast = this.broadcastRepository.findVisible(username, id).orElse(null);
+		if(broadcast == null || !sources.contains(broadcast.getSource()))
+			return null;
+		BroadcastRead read = new BroadcastRead(username, id);
+		try {
+			if(!this.readRepository.existsById(read.getId()))
+				this.readRepository.save(read);
+		} catch(DataIntegrityViolationException e) {
+			// letta nello stesso momento da un'altra richiesta
 		}
-		return msg;
+		return broadcast.toNotification(username, true);
 	}
 
 	/**
@@ -71,5 +338,24 @@ public class NotificationHandler {
 	 */
 	public void deleteUser(String username) {
 		this.notificationRepository.deleteAll(getMyMessages(username));
+		this.readRepository.deleteAll(this.readRepository.findByUsername(username));
+		this.unreadRepository.findById(username).ifPresent(this.unreadRepository::delete);
+	}
+	
+	/**
+	 * elimina le notifiche dirette lette e tutte le notifiche
+	 * uniche piu' vecchie del periodo di conservazione. viene
+	 * chiamato periodicamente; solo le notifiche dirette non lette
+	 * restano, le notifiche uniche scadono anche se non lette
+	 * e smettono di essere contate tra le non lette
+	 * @return numero di righe eliminate
+	 */
+	public int compact() {
+		LocalDateTime limit = LocalDateTime.now().minusDays(this.retentionDays);
+		Integer removed = this.transactions.execute(status ->
+				this.notificationRepository.deleteReadBefore(limit)
+				+ this.readRepository.deleteOfBroadcastsBefore(limit)
+				+ this.broadcastRepository.deleteBefore(limit));
+		return removed == null ? 0 : removed;
 	}
 }
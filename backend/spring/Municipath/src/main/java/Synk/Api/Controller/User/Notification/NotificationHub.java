@@ -0,0 +1,286 @@
+package Synk.Api.Controller.User.Notification;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import Synk.Api.Model.User.Notification.Broadcast;
+import Synk.Api.Model.User.Notification.Notification;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * smistamento in memoria delle notifiche verso gli utenti collegati
+ * con uno stream di eventi. una connessione aperta ma ferma non occupa
+ * thread: ogni connessione ha solo una coda limitata di eventi, svuotata
+ * da pochi thread condivisi quando c'e' qualcosa da mandare. chi non
+ * legge abbastanza in fretta riempie la sua coda e viene scollegato,
+ * e rileggera' i messaggi persi da /api/v1/msgs.
+ */
+public class NotificationHub {
+
+	/**
+	 * evento vuoto mandato periodicamente, cosi' che proxy e
+	 * client non chiudano le connessioni senza traffico
+	 */
+	private static final Object HEARTBEAT = new Object();
+
+	/**
+	 * connessioni per utente e per comune o contributor seguito
+	 */
+	private final Map<String, Set<Subscriber>> subscribers;
+	private final int bufferSize;
+	private final long timeout;
+	private final ExecutorService senders;
+	private final ScheduledExecutorService heartbeats;
+	private final AtomicInteger connections;
+	private final Counter delivered, evicted;
+
+	/**
+	 * @param bufferSize eventi massimi in attesa per connessione
+	 * @param heartbeat secondi tra due eventi vuoti
+	 * @param timeout millisecondi dopo cui una connessione va riaperta
+	 * @param threads thread che scrivono sulle connessioni
+	 * @param registry registro su cui pubblicare le metriche
+	 */
+	public NotificationHub(int bufferSize, long heartbeat, long timeout, int threads, MeterRegistry registry) {
+		this.subscribers = new ConcurrentHashMap<>();
+		this.bufferSize = bufferSize;
+		this.timeout = timeout;
+		this.senders = Executors.newFixedThreadPool(threads, r -> daemon(r, "notification-stream"));
+		this.heartbeats = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "notification-heartbeat"));
+		this.heartbeats.scheduleAtFixedRate(this::heartbeat, heartbeat, heartbeat, TimeUnit.SECONDS);
+		this.connections = new AtomicInteger();
+		Gauge.builder("municipath.notifications.streams", this.connections, AtomicInteger::get)
+				.description("connessioni aperte per le notifiche").register(registry);
+		this.delivered = Counter.builder("municipath.notifications.streamed").register(registry);
+		this.evicted = Counter.builder("municipath.notifications.streams.evicted")
+				.description("connessioni chiuse perche' troppo lente").register(registry);
+	}
+
+	private static Thread daemon(Runnable r, String name) {
+		Thread t = new Thread(r, name);
+		t.setDaemon(true);
+		return t;
+	}
+
+	/**
+	 * apre lo stream di un utente
+	 * @param username utente collegato
+	 * @param sources chiavi dei comuni e contributor seguiti
+	 * @return connessione da restituire al client
+	 */
+	public SseEmitter subscribe(String username, List<String> sources) {
+		SseEmitter emitter = new SseEmitter(this.timeout);
+		Subscriber subscriber = new Subscriber(username, sources, emitter, new ArrayBlockingQueue<>(this.bufferSize));
+		emitter.onCompletion(() -> remove(subscriber));
+		emitter.onTimeout(() -> remove(subscriber));
+		emitter.onError(e -> remove(subscriber));
+		this.subscribers.computeIfAbsent(username, k -> ConcurrentHashMap.newKeySet()).add(subscriber);
+		sources.forEach(s -> this.subscribers.computeIfAbsent(s, k -> ConcurrentHashMap.newKeySet()).add(subscriber));
+		this.connections.incrementAndGet();
+		return emitter;
+	}
+
+	/**
+	 * aggiunge un comune o contributor seguito alle
+	 * connessioni gia' aperte di un utente
+	 * @param username utente
+	 * @param source chiave del comune o contributor seguito
+	 */
+	public void follow(String username, String source) {
+		Set<Subscriber> connections = this.subscribers.get(username);
+		if(connections == null)
+			return;
+		connections.forEach(s -> {
+			s.sources().add(source);
+			this.subscribers.computeIfAbsent(source, k -> ConcurrentHashMap.newKeySet()).add(s);
+			if(!this.subscribers.getOrDefault(username, Set.of()).contains(s))
+				removeFrom(source, s);
+		});
+	}
+
+	/**
+	 * toglie un comune o contributor non piu' seguito
+	 * dalle connessioni aperte di un utente
+	 * @param username utente
+	 * @param source chiave del comune o contributor
+	 */
+	public void unfollow(String username, String source) {
+		Set<Subscriber> connections = this.subscribers.get(username);
+		if(connections == null)
+			return;
+		connections.forEach(s -> {
+			s.sources().remove(source);
+			removeFrom(source, s);
+		});
+	}
+
+	/**
+	 * manda una notifica alle connessioni del destinatario
+	 * @param notification notifica salvata
+	 */
+	public void publish(Notification notification) {
+		Set<Subscriber> targets = this.subscribers.get(notification.getReceiver());
+		if(targets != null)
+			targets.forEach(s -> offer(s, notification));
+	}
+
+	/**
+	 * manda una notifica unica alle connessioni
+	 * di chi segue il comune o il contributor
+	 * @param broadcast notifica unica salvata
+	 */
+	public void publish(Broadcast broadcast) {
+		Set<Subscriber> targets = this.subscribers.get(broadcast.getSource());
+		if(targets != null)
+			targets.forEach(s -> offer(s, broadcast.toNotification(s.username(), false)));
+	}
+
+	/**
+	 * mette un evento nella coda di una connessione. se la coda
+	 * e' piena il client e' troppo lento e viene scollegato
+	 * @param subscriber connessione
+	 * @param event evento da mandare
+	 */
+	private void offer(Subscriber subscriber, Object event) {
+		if(!subscriber.buffer().offer(event)) {
+			this.evicted.increment();
+			close(subscriber);
+			return;
+		}
+		schedule(subscriber);
+	}
+
+	/**
+	 * affida la connessione a un thread di invio, se non
+	 * ce n'e' gia' uno che la sta svuotando
+	 * @param subscriber connessione
+	 */
+	private void schedule(Subscriber subscriber) {
+		if(!subscriber.draining().compareAndSet(false, true))
+			return;
+		try {
+			this.senders.execute(() -> drain(subscriber));
+		} catch(RejectedExecutionException e) {
+			subscriber.draining().set(false);
+		}
+	}
+
+	/**
+	 * manda tutti gli eventi in coda di una connessione. alla fine
+	 * ricontrolla la coda, per non perdere eventi arrivati mentre
+	 * si rilasciava la connessione
+	 * @param subscriber connessione
+	 */
+	private void drain(Subscriber subscriber) {
+		try {
+			Object event;
+			while((event = subscriber.buffer().poll()) != null)
+				send(subscriber, event);
+		} catch(IOException | IllegalStateException e) {
+			close(subscriber);
+		} finally {
+			subscriber.draining().set(false);
+		}
+		if(!subscriber.buffer().isEmpty() && this.subscribers.containsKey(subscriber.username()))
+			schedule(subscriber);
+	}
+
+	private void send(Subscriber subscriber, Object event) throws IOException {
+		if(event == HEARTBEAT) {
+			subscriber.emitter().send(SseEmitter.event().comment("heartbeat"));
+			return;
+		}
+		Notification notification = (Notification) event;
+		subscriber.emitter().send(SseEmitter.event().id(notification.getId())
+				.name("notification").data(notification));
+		this.delivered.increment();
+	}
+
+	/**
+	 * accoda un evento vuoto alle connessioni senza altro da mandare
+	 */
+	private void heartbeat() {
+		this.subscribers.forEach((key, targets) -> targets.forEach(s -> {
+			if(s.username().equals(key) && s.buffer().isEmpty())
+				offer(s, HEARTBEAT);
+		}));
+	}
+
+	private void close(Subscriber subscriber) {
+		remove(subscriber);
+		subscriber.emitter().complete();
+	}
+
+	private void remove(Subscriber subscriber) {
+		if(!removeFrom(subscriber.username(), subscriber))
+			return;
+		subscriber.sources().forEach(s -> removeFrom(s, subscriber));
+		this.connections.decrementAndGet();
+	}
+
+	private boolean removeFrom(String key, Subscriber subscriber) {
+		boolean[] removed = new boolean[1];
+		this.subscribers.computeIfPresent(key, (k, set) -> {
+			removed[0] = set.remove(subscriber);
+			return set.isEmpty() ? null : set;
+		});
+		return removed[0];
+	}
+
+	/**
+	 * @return connessioni aperte
+	 */
+	public int getConnections() {
+		return this.connections.get();
+	}
+
+	/**
+	 * chiude tutte le connessioni e ferma i thread
+	 */
+	public void stop() {
+		this.heartbeats.shutdownNow();
+		this.senders.shutdownNow();
+		this.subscribers.values().forEach(set -> set.forEach(s -> s.emitter().complete()));
+		this.subscribers.clear();
+	}
+
+	/**
+	 * connessione aperta. le chiavi seguite cambiano quando
+	 * l'utente segue o smette di seguire qualcuno, quindi
+	 * una connessione e' uguale solo a se stessa
+	 */
+	private record Subscriber(String username, Set<String> sources, SseEmitter emitter,
+			BlockingQueue<Object> buffer, AtomicBoolean draining) {
+
+		private Subscriber(String username, List<String> sources, SseEmitter emitter, BlockingQueue<Object> buffer) {
+			this(username, ConcurrentHashMap.newKeySet(), emitter, buffer, new AtomicBoolean());
+			this.sources.addAll(sources);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return this == other;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this);
+		}
+	}
+}
@@ -14,8 +14,10 @@ import Synk.Api.Model.User.UserRepository;
 import Synk.Api.Model.User.Notification.Notification;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @Service
 public class UserHandler implements UserProvider {
@@ -39,6 +41,19 @@ public class UserHandler implements UserProvider {
 	private FollowHandler followHandler;
 	@Autowired
     private NotificationHandler notificationHandler;
+	
+	/**
+	 * numero di seguaci oltre il quale un nuovo contenuto
+	 * viene notificato con una sola notifica unica, letta
+	 * da ogni seguace insieme ai suoi messaggi
+	 */
+	@Value("${municipath.notifications.broadcast-threshold:1000}")
+	private long broadcastThreshold;
+	
+	/**
+	 * messaggi restituiti di default e al massimo per pagina
+	 */
+	private static final int MESSAGES_PAGE = 50, MAX_MESSAGES_PAGE = 100;
 
 	/**
 	 * Costruttore della classe UserHandler, per gli oggetti "notifications" e "encoder"
@@ -262,17 +277,54 @@ public class UserHandler implements UserProvider {
 	}
 	
 	/**
-	 * metodo per ottenere tutti i messaggi
-	 * di un dato utente
+	 * metodo per ottenere i messaggi piu'
+	 * recenti di un dato utente
 	 * @param username nome utente
 	 * @return messaggi dell'utente
 	 */
 	public List<Notification> getMyMessages(String username){
-		if(username == null)
+		return getMyMessages(username, null, MESSAGES_PAGE);
+	}
+	
+	/**
+	 * metodo per ottenere una pagina dei messaggi di un
+	 * dato utente, successiva al messaggio indicato
+	 * @param username nome utente
+	 * @param beforeId id dell'ultimo messaggio ricevuto, null per la prima pagina
+	 * @param limit numero massimo di messaggi
+	 * @return messaggi dell'utente
+	 */
+	public List<Notification> getMyMessages(String username, String beforeId, int limit){
+		if(username == null || limit <= 0)
 			return null;
 		if (!(this.usernameExists(username)))
 			return null;
-		return this.notificationHandler.getMyMessages(username);
+		return this.notificationHandler.getMyMessages(username, this.followHandler.getFollowedSources(username),
+				beforeId, Math.min(limit, MAX_MESSAGES_PAGE));
+	}
+	
+	/**
+	 * metodo per ricevere le nuove notifiche
+	 * di un utente appena vengono create
+	 * @param username nome utente
+	 * @return stream di eventi, null se l'utente non esiste
+	 */
+	public SseEmitter subscribe(String username) {
+		if(username == null || !this.usernameExists(username))
+			return null;
+		return this.notificationHandler.subscribe(username, this.followHandler.getFollowedSources(username));
+	}
+	
+	/**
+	 * metodo per ottenere il numero di
+	 * messaggi non letti di un utente
+	 * @param username nome utente
+	 * @return numero di messaggi non letti, -1 se l'utente non esiste
+	 */
+	public long getUnreadCount(String username) {
+		if(username == null || !this.usernameExists(username))
+			return -1;
+		return this.notificationHandler.getUnreadCount(username, this.followHandler.getFollowedSources(username));
 	}
 	
 	/**
@@ -287,7 +339,7 @@ public class UserHandler implements UserProvider {
 			return null;
 		if (!(this.usernameExists(username)))
 			return null;
-		return this.notificationHandler.getMyMessage(username, id);
+		return this.notificationHandler.getMyMessage(username, id, this.followHandler.getFollowedSources(username));
 	}
 
 	/**
@@ -333,22 +385,25 @@ public class UserHandler implements UserProvider {
 	/**
 	 * Metodo per notificare la creazione di un contenuto
 	 * a tutti gli utenti che seguono un certo
-	 * comune o contributor
+	 * comune o contributor. se i seguaci sono molti
+	 * viene scritta una sola notifica unica
 	 * @param data contenuto da notificare
 	 */
 	public void notifyCreation(MetaData data) {
 		if(data == null)
 			return;
-		List<String> list;
-		String author;
-		if(data.isOfCity()) {
-			list = this.followHandler.getAllCityFollowers(data.getCityId());
-			author = this.mediator.getNameOfCity(data.getCityId());
-		} else {
-			list = this.followHandler.getAllContributorFollowers(data.getAuthor());
-			author = data.getAuthor();
+		String message = "Un nuovo contenuto è stato pubblicato!";
+		String followed = data.isOfCity() ? data.getCityId() : data.getAuthor();
+		String author = data.isOfCity() ? this.mediator.getNameOfCity(data.getCityId()) : data.getAuthor();
+		if(this.followHandler.countFollowers(followed) > this.broadcastThreshold) {
+			String source = data.isOfCity() ? this.followHandler.citySource(followed)
+					: this.followHandler.contributorSource(followed);
+			notificationHandler.broadcast(author, message, data.getId(), source);
+			return;
 		}
-        notificationHandler.notifyEvent(author, "Un nuovo contenuto è stato pubblicato!", data.getId(), list);
+		List<String> list = data.isOfCity() ? this.followHandler.getAllCityFollowers(followed)
+				: this.followHandler.getAllContributorFollowers(followed);
+        notificationHandler.notifyEvent(author, message, data.getId(), list);
 	}
 
 	/**
@@ -362,7 +417,10 @@ public class UserHandler implements UserProvider {
 			return false;
 		if(!(this.usernameExists(username) && this.usernameExists(contributor)))
 			return false;
-		return this.followHandler.followContributor(username, contributor);
+		if(!this.followHandler.followContributor(username, contributor))
+			return false;
+		this.notificationHandler.follow(username, this.followHandler.contributorSource(contributor));
+		return true;
 	}
 	
 	/**
@@ -374,7 +432,10 @@ public class UserHandler implements UserProvider {
 	public boolean unfollowContributor(String username, String contributor) {
 		if(username == null || contributor == null)
 			return false;
-		return this.followHandler.unfollowContributor(username, contributor);
+		if(!this.followHandler.unfollowContributor(username, contributor))
+			return false;
+		this.notificationHandler.unfollow(username, this.followHandler.contributorSource(contributor));
+		return true;
 	}
 	
 	/**
@@ -390,7 +451,10 @@ public class UserHandler implements UserProvider {
 			return false;
 		if(!this.mediator.checkCity(cityId))
 			return false;
-		return this.followHandler.followCity(username, cityId);
+		if(!this.followHandler.followCity(username, cityId))
+			return false;
+		this.notificationHandler.follow(username, this.followHandler.citySource(cityId));
+		return true;
 	}
 	
 	/**
@@ -402,7 +466,10 @@ public class UserHandler implements UserProvider {
 	public boolean unfollowCity(String username, String cityId) {
 		if(username == null || cityId == null)
 			return false;
-		return this.followHandler.unfollowCity(username, cityId);
+		if(!this.followHandler.unfollowCity(username, cityId))
+			return false;
+		this.notificationHandler.unfollow(username, this.followHandler.citySource(cityId));
+		return true;
 	}
 	
 	/**
@@ -419,7 +486,10 @@ public class UserHandler implements UserProvider {
 		MetaData meta = this.mediator.getMetaData(contentId);
 		if(meta == null) 
 			return false;
-		return this.followHandler.follow(username, meta);
+		if(!this.followHandler.follow(username, meta))
+			return false;
+		this.notificationHandler.follow(username, this.followHandler.source(meta));
+		return true;
 	}
 	
 	/**
@@ -435,7 +505,10 @@ public class UserHandler implements UserProvider {
 		MetaData meta = this.mediator.getMetaData(contentId);
 		if(meta == null) 
 			return false;
-		return this.followHandler.unfollow(username, meta);
+		if(!this.followHandler.unfollow(username, meta))
+			return false;
+		this.notificationHandler.unfollow(username, this.followHandler.source(meta));
+		return true;
 	}
 	
 	/**
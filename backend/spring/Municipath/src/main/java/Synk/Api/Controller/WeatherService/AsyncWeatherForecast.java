@@ -0,0 +1,115 @@
+package Synk.Api.Controller.WeatherService;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import Synk.Api.Model.Post.Position;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * servizio meteo con un tempo massimo di risposta.
+ * se la previsione e' gia' in memoria la restituisce subito,
+ * altrimenti la fa cercare ad un gruppo di thread dedicato e
+ * la aspetta solo per il tempo concesso: se non arriva in tempo
+ * risponde "?" e la ricerca continua in sottofondo, cosi' che
+ * la visualizzazione successiva la trovi gia' pronta.
+ */
+public class AsyncWeatherForecast implements WeatherService {
+
+	private final WeatherForecastProxy proxy;
+	private final long budget;
+	private final ThreadPoolExecutor executor;
+	/**
+	 * metriche: durata dell'arricchimento, risposte
+	 * scadute e ricerche rifiutate perche' la coda e' piena
+	 */
+	private final Timer latency;
+	private final Counter timeouts, rejected;
+
+	public AsyncWeatherForecast(WeatherForecastProxy proxy) {
+		this(proxy, 100, 4, 1000, Metrics.globalRegistry);
+	}
+
+	/**
+	 * @param proxy cache delle previsioni
+	 * @param budget millisecondi concessi ad una previsione non in memoria
+	 * @param threads numero di thread dedicati alle ricerche
+	 * @param queue numero massimo di ricerche in attesa
+	 * @param registry registro su cui pubblicare le metriche
+	 */
+	public AsyncWeatherForecast(WeatherForecastProxy proxy, long budget, int threads, int queue, MeterRegistry registry) {
+		this.proxy = proxy;
+		this.budget = budget;
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queue), r -> {
+					Thread t = new Thread(r, "weather-enrichment");
+					t.setDaemon(true);
+					return t;
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+		this.latency = Timer.builder("municipath.weather.enrichment")
+				.description("tempo speso per aggiungere il meteo ad un post").register(registry);
+		this.timeouts = Counter.builder("municipath.weather.enrichment.timeouts")
+				.description("previsioni non arrivate entro il tempo concesso").register(registry);
+		this.rejected = Counter.builder("municipath.weather.enrichment.rejected")
+				.description("ricerche scartate per coda piena").register(registry);
+	}
+
+	@Override
+	public String getWeather(Position position, LocalDateTime time) {
+		long start = System.nanoTime();
+		try {
+			String cached = this.proxy.getCachedWeather(position, time);
+			if(cached != null)
+				return cached;
+			return waitForWeather(position, time);
+		} finally {
+			this.latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * avvia la ricerca in sottofondo e la aspetta
+	 * al massimo per il tempo concesso
+	 * @param position posizione da controllare
+	 * @param time momento da controllare
+	 * @return previsione, o "?" se non e' arrivata in tempo
+	 */
+	private String waitForWeather(Position position, LocalDateTime time) {
+		CompletableFuture<String> loading;
+		try {
+			loading = CompletableFuture.supplyAsync(() -> this.proxy.getWeather(position, time), this.executor);
+		} catch(RejectedExecutionException e) {
+			this.rejected.increment();
+			return "?";
+		}
+		try {
+			return loading.get(this.budget, TimeUnit.MILLISECONDS);
+		} catch(TimeoutException e) {
+			this.timeouts.increment();
+			return "?";
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return "?";
+		} catch(ExecutionException e) {
+			return "?";
+		}
+	}
+
+	/**
+	 * ferma i thread dedicati alle ricerche
+	 */
+	public void shutdown() {
+		this.executor.shutdownNow();
+	}
+
+}
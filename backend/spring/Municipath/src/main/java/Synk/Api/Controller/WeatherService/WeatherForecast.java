@@ -1,43 +1,172 @@
 package Synk.Api.Controller.WeatherService;
 
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 import Synk.Api.Model.Post.Position;
+import Synk.Api.Model.Post.WeatherService.Json.Forecastday;
+import Synk.Api.Model.Post.WeatherService.Json.Hour;
 import Synk.Api.Model.Post.WeatherService.Json.Root;
 
 
 
 public class WeatherForecast implements WeatherService {
-	
-    private final String WEATHER_URL = "http://api.weatherapi.com/v1/forecast.json?key=d9c1d96754924d61aa2172143242201&q={lat},{lon}&days=14";
-    
-    
+
+    private static final String WEATHER_URL = "http://api.weatherapi.com/v1/forecast.json?key=d9c1d96754924d61aa2172143242201&q={lat},{lon}&days=14";
+
+    /**
+     * tempi massimi, in millisecondi, per connettersi
+     * al servizio e per ricevere la risposta
+     */
+    private static final int CONNECT_TIMEOUT = 2000, READ_TIMEOUT = 3000;
+
+    /**
+     * url del servizio, durata di una previsione scaricata,
+     * previsioni complete per zona e client http.
+     * ogni zona contiene tutti i giorni e tutte le ore
+     * ricevuti dal servizio, oppure il loro scaricamento
+     * in corso.
+     */
+    private final String url;
+    private final long ttl;
+    private final Map<Area, CompletableFuture<AreaForecast>> forecasts;
+    private final RestTemplate rest;
+    private final LongAdder calls;
+
+    public WeatherForecast() {
+    	this(WEATHER_URL, TimeUnit.HOURS.toMillis(12));
+    }
+
+    /**
+     * costruttore con servizio esplicito, usato
+     * anche per puntare al server meteo locale di prova
+     * @param url url del servizio, con i segnaposto {lat} e {lon}
+     * @param ttl durata di una previsione scaricata in millisecondi
+     */
+    public WeatherForecast(String url, long ttl) {
+    	this.url = url;
+    	this.ttl = ttl;
+    	this.forecasts = new ConcurrentHashMap<>();
+    	SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+    	factory.setConnectTimeout(CONNECT_TIMEOUT);
+    	factory.setReadTimeout(READ_TIMEOUT);
+    	this.rest = new RestTemplate(factory);
+    	this.calls = new LongAdder();
+    }
+
     @Override
     public String getWeather(Position position, LocalDateTime time) {
-    	LocalDateTime now = LocalDateTime.now();
-    	int day = time.getDayOfYear() - now.getDayOfYear();
-    	day = day < 0 ? day + 365 : day;
-    	if(day > 2) return "?";
-    	return callService(day, time.getHour(), position);
+    	long day = ChronoUnit.DAYS.between(LocalDate.now(), time.toLocalDate());
+    	if(day < 0 || day > 2) return "?";
+    	String date = time.toLocalDate().toString();
+    	for(Forecastday forecastday : getForecast(new Area(position))) {
+    		if(date.equals(forecastday.date)) {
+    			Hour hour = forecastday.hour.get(time.getHour());
+    			return hour.condition == null ? "?" : hour.condition.icon;
+    		}
+    	}
+    	return "?";
     }
-    
+
+    /**
+     * restituisce la previsione completa di una zona, scaricandola
+     * una sola volta finche' non scade, anche se richiesta da
+     * piu' thread insieme. se lo scaricamento fallisce la zona
+     * viene liberata e l'errore arriva a chi la stava aspettando.
+     * @param area zona ricercata
+     * @return giorni di previsione della zona
+     */
+    private List<Forecastday> getForecast(Area area) {
+    	while(true) {
+    		CompletableFuture<AreaForecast> current = this.forecasts.get(area);
+    		if(current == null) {
+    			CompletableFuture<AreaForecast> loading = new CompletableFuture<>();
+    			if(this.forecasts.putIfAbsent(area, loading) != null)
+    				continue;
+    			try {
+    				AreaForecast forecast = new AreaForecast(callService(area),
+    						System.currentTimeMillis() + this.ttl);
+    				loading.complete(forecast);
+    				removeExpired();
+    				return forecast.days;
+    			} catch(RuntimeException e) {
+    				this.forecasts.remove(area, loading);
+    				loading.completeExceptionally(e);
+    				throw e;
+    			}
+    		}
+    		AreaForecast forecast = current.join();
+    		if(System.currentTimeMillis() < forecast.expiration)
+    			return forecast.days;
+    		this.forecasts.remove(area, current);
+    	}
+    }
+
+    /**
+     * elimina le previsioni scadute
+     */
+    private void removeExpired() {
+    	long now = System.currentTimeMillis();
+    	this.forecasts.entrySet().removeIf(e -> {
+    		AreaForecast forecast = e.getValue().getNow(null);
+    		return forecast != null && now >= forecast.expiration;
+    	});
+    }
+
 	/**
-	 * metodo privato che chiama un servizio meteo
-	 * che permette di ottenere il meteo del giorno
-	 * @param index lassi di tre ore da adesso
-	 * @param pos posizione da ricercare
-	 * @return meteo ricercato
+	 * metodo privato che chiama il servizio meteo
+	 * e ottiene tutta la previsione di una zona
+	 * @param area zona da ricercare
+	 * @return giorni di previsione
 	 */
-    private String callService(int day, int hour, Position pos) {
-        ResponseEntity<Root> response = new RestTemplate().getForEntity(
-        		WEATHER_URL, Root.class, pos.getLat(), pos.getLng());
-        if (response.getStatusCode() != HttpStatus.OK) return "?";
-        return response.getBody().forecast
-        		.forecastday.get(day).hour.get(hour).condition.icon;
+    private List<Forecastday> callService(Area area) {
+    	this.calls.increment();
+        ResponseEntity<Root> response = this.rest.getForEntity(
+        		this.url, Root.class, area.getLat(), area.getLng());
+        if (response.getStatusCode() != HttpStatus.OK || response.getBody() == null
+        		|| response.getBody().forecast == null)
+        	throw new IllegalStateException("previsione non disponibile");
+        return response.getBody().forecast.forecastday;
+    }
+
+    /**
+     * @return numero di chiamate fatte al servizio
+     */
+    public long getUpstreamCalls() {
+    	return this.calls.sum();
+    }
+
+    /**
+     * zona di previsione: posizione arrotondata alla seconda
+     * cifra decimale, circa un chilometro
+     */
+    private record Area(long lat, long lng) {
+
+    	private Area(Position position) {
+    		this(Math.round(position.getLat() * 100), Math.round(position.getLng() * 100));
+    	}
+
+    	private double getLat() {
+    		return this.lat / 100.0;
+    	}
+
+    	private double getLng() {
+    		return this.lng / 100.0;
+    	}
     }
+
+    private record AreaForecast(List<Forecastday> days, long expiration) { }
 }
@@ -1,73 +1,187 @@
 package Synk.Api.Controller.WeatherService;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 import Synk.Api.Model.Post.Position;
 import Synk.Api.Model.Post.WeatherService.Prediction;
 
 public class WeatherForecastProxy implements WeatherService {
-	
+
 	/**
-	 * lista delle previsioni,
-	 * vero servizio e momento di reset
+	 * ampiezza, in ore, della fascia oraria
+	 * coperta da una singola previsione
 	 */
-    List<Prediction> predictions;
-    WeatherForecast service;
-    LocalDateTime reset;
-    
+	private static final int SLOT_HOURS = 3;
+
+	/**
+	 * previsioni per cella, vero servizio,
+	 * durata di una previsione e numero massimo di celle.
+	 * ogni cella contiene la previsione oppure il suo
+	 * caricamento in corso, cosi' che richieste contemporanee
+	 * per la stessa cella chiamino il servizio una volta sola
+	 */
+    private final Map<Cell, CompletableFuture<Prediction>> predictions;
+    private final WeatherService service;
+    private final long ttl;
+    private final int maxSize;
+    private final ReentrantLock evicting;
+    /**
+     * contatori delle ricerche
+     */
+    private final LongAdder hits, misses, evictions;
+
     /**
      * costruttore del proxy
      */
     public WeatherForecastProxy(){
-    	this.predictions = new ArrayList<>();
-    	this.service = new WeatherForecast();
-    	setReset();
+    	this(new WeatherForecast(), TimeUnit.HOURS.toMillis(12), 10000);
     }
-    
+
     /**
-     * metodo per resettare il momento di reset delle
-     * previsioni a tra 12 ore.
+     * costruttore del proxy con servizio e limiti espliciti
+     * @param service servizio meteo reale
+     * @param ttl durata di una previsione in millisecondi
+     * @param maxSize numero massimo di previsioni tenute in memoria
      */
-    private void setReset() {
-    	this.reset = LocalDateTime.now().plusHours(12);
+    public WeatherForecastProxy(WeatherService service, long ttl, int maxSize){
+    	this.predictions = new ConcurrentHashMap<>();
+    	this.service = service;
+    	this.ttl = ttl;
+    	this.maxSize = maxSize;
+    	this.evicting = new ReentrantLock();
+    	this.hits = new LongAdder();
+    	this.misses = new LongAdder();
+    	this.evictions = new LongAdder();
     }
-    
+
     @Override
     public String getWeather(Position position, LocalDateTime time) {
-    	checkReset();
-    	Prediction prediction = searchPrediction(position, time);
-    	if(prediction != null)
-    		return prediction.getMeteo();
-    	String meteo = service.getWeather(position, time);
-    	this.predictions.add(new Prediction(position, time, meteo));
-        return meteo;
+    	Cell cell = new Cell(position, time);
+    	while(true) {
+    		CompletableFuture<Prediction> current = this.predictions.get(cell);
+    		if(current == null) {
+    			CompletableFuture<Prediction> loading = new CompletableFuture<>();
+    			if(this.predictions.putIfAbsent(cell, loading) == null)
+    				return load(cell, loading, position, time);
+    			continue;
+    		}
+    		Prediction prediction = current.join();
+    		if(prediction == null)
+    			return "?";
+    		if(!prediction.isExpired(System.currentTimeMillis())) {
+    			this.hits.increment();
+    			return prediction.getMeteo();
+    		}
+    		this.predictions.remove(cell, current);
+    	}
     }
-    
+
     /**
-     * controlla se il momento di reset e' arrivato
-     * nel caso, lo aggiorna e cancella tutte le
-     * previsioni
+     * restituisce la previsione solo se e' gia' in memoria e valida,
+     * senza mai chiamare il servizio ne' aspettare un caricamento
+     * @param position posizione ricercata
+     * @param time momento ricercato
+     * @return previsione, o null se non e' disponibile subito
      */
-    private void checkReset() {
-		if(this.reset.isBefore(LocalDateTime.now())) {
-			setReset();
-			this.predictions.clear();
-		}
-	}
-    
+    public String getCachedWeather(Position position, LocalDateTime time) {
+    	CompletableFuture<Prediction> current = this.predictions.get(new Cell(position, time));
+    	Prediction prediction = current == null ? null : current.getNow(null);
+    	if(prediction == null || prediction.isExpired(System.currentTimeMillis()))
+    		return null;
+    	this.hits.increment();
+    	return prediction.getMeteo();
+    }
+
     /**
-     * cerca le previsioni che corrispondono
-     * parzialmente a quelle date in input
-     * @param position posizione ricercata
-     * @param time momento ricercata-o
-     * @return se esiste, la previsione ricercata, altrimenti null
+     * chiama il servizio reale per una cella e pubblica il risultato
+     * a tutti quelli che lo stanno aspettando. se il servizio fallisce
+     * la cella viene liberata, cosi' che la richiesta successiva riprovi.
+     * @param cell cella da caricare
+     * @param loading caricamento registrato per la cella
+     * @param position posizione richiesta
+     * @param time momento richiesto
+     * @return previsione ottenuta, o "?" se non recuperabile
      */
-	private Prediction searchPrediction(Position position, LocalDateTime time) {
-		return this.predictions.stream()
-				.filter(p -> p.almostEquals(position, time))
-				.findFirst().orElse(null);
-	}
-    
+    private String load(Cell cell, CompletableFuture<Prediction> loading, Position position, LocalDateTime time) {
+    	this.misses.increment();
+    	try {
+    		String meteo = this.service.getWeather(position, time);
+    		loading.complete(new Prediction(meteo, System.currentTimeMillis() + this.ttl));
+    		evictIfFull();
+    		return meteo;
+    	} catch(RuntimeException e) {
+    		this.predictions.remove(cell, loading);
+    		loading.complete(null);
+    		return "?";
+    	}
+    }
+
+    /**
+     * se si e' superato il numero massimo di previsioni, elimina
+     * prima quelle scadute e poi quelle che scadranno prima, fino
+     * a tornare al novanta per cento della capienza. lo fa un solo
+     * thread alla volta, gli altri non aspettano.
+     */
+    private void evictIfFull() {
+    	if(this.predictions.size() <= this.maxSize || !this.evicting.tryLock())
+    		return;
+    	try {
+    		long now = System.currentTimeMillis();
+    		this.predictions.forEach((cell, entry) -> {
+    			Prediction p = entry.getNow(null);
+    			if(p != null && p.isExpired(now) && this.predictions.remove(cell, entry))
+    				this.evictions.increment();
+    		});
+    		int target = this.maxSize - this.maxSize / 10;
+    		if(this.predictions.size() <= target)
+    			return;
+    		this.predictions.entrySet().stream()
+    			.filter(e -> e.getValue().getNow(null) != null)
+    			.sorted(Comparator.comparingLong(e -> e.getValue().getNow(null).getExpiration()))
+    			.limit(this.predictions.size() - target)
+    			.forEach(e -> {
+    				if(this.predictions.remove(e.getKey(), e.getValue()))
+    					this.evictions.increment();
+    			});
+    	} finally {
+    		this.evicting.unlock();
+    	}
+    }
+
+    public long getHits() {
+    	return this.hits.sum();
+    }
+
+    public long getMisses() {
+    	return this.misses.sum();
+    }
+
+    public long getEvictions() {
+    	return this.evictions.sum();
+    }
+
+    public int size() {
+    	return this.predictions.size();
+    }
+
+    /**
+     * cella di ricerca delle previsioni: posizione arrotondata
+     * alla terza cifra decimale e fascia oraria di tre ore
+     */
+    private record Cell(long lat, long lng, long slot) {
+
+    	private Cell(Position position, LocalDateTime time) {
+    		this(Math.round(position.getLat() * 1000), Math.round(position.getLng() * 1000),
+    				time.toEpochSecond(ZoneOffset.UTC) / (SLOT_HOURS * 3600));
+    	}
+    }
+
 }
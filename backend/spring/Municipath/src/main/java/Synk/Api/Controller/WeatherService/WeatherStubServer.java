@@ -0,0 +1,126 @@
+package Synk.Api.Controller.WeatherService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import Synk.Api.Model.Post.WeatherService.Json.Condition;
+import Synk.Api.Model.Post.WeatherService.Json.Forecast;
+import Synk.Api.Model.Post.WeatherService.Json.Forecastday;
+import Synk.Api.Model.Post.WeatherService.Json.Hour;
+import Synk.Api.Model.Post.WeatherService.Json.Root;
+
+/**
+ * server http locale che imita il servizio meteo,
+ * rispondendo con previsioni sintetiche di tre giorni.
+ * serve per provare sotto carico tutto il percorso del
+ * meteo senza connessione e senza consumare la chiave reale.
+ */
+public class WeatherStubServer {
+
+	private static final String[] ICONS = {
+			"//cdn.weatherapi.com/weather/64x64/day/113.png",
+			"//cdn.weatherapi.com/weather/64x64/day/116.png",
+			"//cdn.weatherapi.com/weather/64x64/day/119.png",
+			"//cdn.weatherapi.com/weather/64x64/day/296.png" };
+
+	private final HttpServer server;
+	private final ObjectMapper mapper;
+	private final AtomicLong requests;
+	private final long delay;
+
+	/**
+	 * avvia il server su una porta libera di localhost
+	 * @param delay millisecondi di attesa prima di ogni risposta,
+	 * per simulare la latenza del servizio reale
+	 * @throws IOException se il server non puo' essere avviato
+	 */
+	public WeatherStubServer(long delay) throws IOException {
+		this.mapper = new ObjectMapper();
+		this.requests = new AtomicLong();
+		this.delay = delay;
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.server.createContext("/v1/forecast.json", this::answer);
+		this.server.setExecutor(Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "weather-stub");
+			t.setDaemon(true);
+			return t;
+		}));
+		this.server.start();
+	}
+
+	/**
+	 * @return url da passare a {@link WeatherForecast}, con gli stessi
+	 * segnaposto di quello reale
+	 */
+	public String getUrl() {
+		return "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort()
+				+ "/v1/forecast.json?q={lat},{lon}&days=3";
+	}
+
+	/**
+	 * @return numero di richieste ricevute
+	 */
+	public long getRequests() {
+		return this.requests.get();
+	}
+
+	public void stop() {
+		this.server.stop(0);
+	}
+
+	private void answer(HttpExchange exchange) throws IOException {
+		this.requests.incrementAndGet();
+		if(this.delay > 0) {
+			try {
+				Thread.sleep(this.delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		byte[] body = this.mapper.writeValueAsBytes(makeForecast(exchange.getRequestURI().getQuery()));
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	/**
+	 * costruisce una previsione di tre giorni, con un'icona
+	 * che dipende da luogo, giorno e ora
+	 * @param query parametri della richiesta
+	 * @return previsione sintetica
+	 */
+	private Root makeForecast(String query) {
+		int seed = query == null ? 0 : query.hashCode();
+		Root root = new Root();
+		root.forecast = new Forecast();
+		root.forecast.forecastday = new ArrayList<>();
+		LocalDate today = LocalDate.now();
+		for(int d = 0; d < 3; d++) {
+			Forecastday day = new Forecastday();
+			day.date = today.plusDays(d).toString();
+			day.hour = new ArrayList<>();
+			for(int h = 0; h < 24; h++) {
+				Hour hour = new Hour();
+				hour.time = day.date + " " + (h < 10 ? "0" + h : h) + ":00";
+				hour.condition = new Condition();
+				hour.condition.icon = ICONS[Math.floorMod(seed + d * 24 + h / 6, ICONS.length)];
+				day.hour.add(hour);
+			}
+			root.forecast.forecastday.add(day);
+		}
+		return root;
+	}
+
+}
@@ -0,0 +1,74 @@
+package Synk.Api.Model.Analysis;
+
+import java.time.LocalDateTime;
+
+import Synk.Api.Model.MetaData;
+import Synk.Api.Model.Feedback.FeedbackSummary;
+import Synk.Api.Model.Feedback.Score;
+
+/**
+ * dati di un post o di un gruppo letti per le analisi:
+ * solo i campi usati dagli analizzatori, con il voto
+ * gia' unito dal riepilogo delle valutazioni
+ */
+public class ContentData implements MetaData {
+
+	private final String id;
+	private final String cityId;
+	private final String author;
+	private final LocalDateTime publicationTime;
+	private final int viewsCount;
+	private final boolean ofCity;
+	private final Score vote;
+
+	/**
+	 * costruttore usato dalle query dei repository
+	 * @param voteSum somma dei voti, null se non ci sono voti
+	 * @param voteCount numero dei voti, null se non ci sono voti
+	 */
+	public ContentData(String id, String cityId, String author, LocalDateTime publicationTime,
+			int viewsCount, boolean ofCity, Double voteSum, Integer voteCount) {
+		this.id = id;
+		this.cityId = cityId;
+		this.author = author;
+		this.publicationTime = publicationTime;
+		this.viewsCount = viewsCount;
+		this.ofCity = ofCity;
+		this.vote = voteCount == null ? new Score(0, 0) : FeedbackSummary.toScore(voteSum, voteCount);
+	}
+
+	@Override
+	public String getId() {
+		return id;
+	}
+
+	@Override
+	public String getCityId() {
+		return cityId;
+	}
+
+	@Override
+	public String getAuthor() {
+		return author;
+	}
+
+	@Override
+	public LocalDateTime getPublicationTime() {
+		return publicationTime;
+	}
+
+	@Override
+	public int getViewsCount() {
+		return viewsCount;
+	}
+
+	@Override
+	public Score getVote() {
+		return vote;
+	}
+
+	@Override
+	public boolean isOfCity() {
+		return ofCity;
+	}
+}
@@ -0,0 +1,146 @@
+package Synk.Api.Model.Analysis;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.springframework.data.domain.Persistable;
+
+import jakarta.persistence.ElementCollection;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.OrderColumn;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+
+/**
+ * statistiche di un mese concluso di un comune, con o senza i dati
+ * dello staff. vengono calcolate una volta sola, alla prima analisi
+ * dopo la fine del mese, e da allora non cambiano piu'.
+ * le statistiche nuove vengono sempre inserite: se esistono gia',
+ * il salvataggio fallisce invece di sovrascriverle
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_month_stats_city", columnList = "cityId"))
+public class MonthStats implements Persistable<String> {
+
+	@Id
+	private String id;
+	private String cityId;
+	private String period;
+	private boolean onlyUsers;
+	private long publications;
+	private long views;
+	private long voteAverage;
+	@ElementCollection(fetch = FetchType.EAGER)
+	@OrderColumn
+	private List<String> topContributors;
+	@ElementCollection(fetch = FetchType.EAGER)
+	@OrderColumn
+	private List<String> topViewed;
+	@ElementCollection(fetch = FetchType.EAGER)
+	@OrderColumn
+	private List<String> topLiked;
+	@Transient
+	private boolean created = true;
+
+	public MonthStats(String cityId, YearMonth month, boolean onlyUsers, long publications, long views,
+			long voteAverage, String[] topContributors, String[] topViewed, String[] topLiked) {
+		this.id = idOf(cityId, month, onlyUsers);
+		this.cityId = cityId;
+		this.period = month.toString();
+		this.onlyUsers = onlyUsers;
+		this.publications = publications;
+		this.views = views;
+		this.voteAverage = voteAverage;
+		this.topContributors = compact(topContributors);
+		this.topViewed = compact(topViewed);
+		this.topLiked = compact(topLiked);
+	}
+
+	public MonthStats() { }
+
+	@PostLoad
+	private void loaded() {
+		this.created = false;
+	}
+
+	/**
+	 * @param cityId id del comune
+	 * @param month mese
+	 * @param onlyUsers se senza i dati dello staff
+	 * @return id delle statistiche
+	 */
+	public static String idOf(String cityId, YearMonth month, boolean onlyUsers) {
+		return cityId + "." + month + (onlyUsers ? ".u" : ".a");
+	}
+
+	/**
+	 * le classifiche possono avere posti vuoti: vengono
+	 * salvati solo quelli occupati
+	 */
+	private static List<String> compact(String[] top) {
+		return new ArrayList<>(Arrays.stream(top).filter(Objects::nonNull).toList());
+	}
+
+	/**
+	 * @return classifica lunga size, con i posti vuoti in fondo
+	 */
+	private static String[] expand(List<String> top, int size) {
+		String[] result = new String[size];
+		for(int i = 0; i < Math.min(size, top.size()); i++)
+			result[i] = top.get(i);
+		return result;
+	}
+
+	@Override
+	public String getId() {
+		return id;
+	}
+
+	@Override
+	public boolean isNew() {
+		return created;
+	}
+
+	public String getCityId() {
+		return cityId;
+	}
+
+	public YearMonth getMonth() {
+		return YearMonth.parse(period);
+	}
+
+	public boolean isOnlyUsers() {
+		return onlyUsers;
+	}
+
+	public long getPublications() {
+		return publications;
+	}
+
+	public long getViews() {
+		return views;
+	}
+
+	public long getVoteAverage() {
+		return voteAverage;
+	}
+
+	public String[] getTopContributors(int size) {
+		return expand(topContributors, size);
+	}
+
+	public String[] getTopViewed(int size) {
+		return expand(topViewed, size);
+	}
+
+	public String[] getTopLiked(int size) {
+		return expand(topLiked, size);
+	}
+}
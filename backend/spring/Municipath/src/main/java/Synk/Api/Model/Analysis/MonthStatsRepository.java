@@ -0,0 +1,10 @@
+package Synk.Api.Model.Analysis;
+
+import java.util.List;
+
+import org.springframework.data.repository.CrudRepository;
+
+public interface MonthStatsRepository extends CrudRepository<MonthStats, String> {
+
+	List<MonthStats> findByCityId(String cityId);
+}
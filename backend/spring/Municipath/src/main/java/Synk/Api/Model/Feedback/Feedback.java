@@ -2,8 +2,11 @@ package Synk.Api.Model.Feedback;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 
 @Entity
+@Table(indexes = @Index(name = "idx_feedback_content", columnList = "contentId"))
 public class Feedback {
 
     @Id
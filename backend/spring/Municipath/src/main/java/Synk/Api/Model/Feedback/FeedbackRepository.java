@@ -2,9 +2,12 @@ package Synk.Api.Model.Feedback;
 
 import org.springframework.data.repository.CrudRepository;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface FeedbackRepository extends CrudRepository<Feedback, String> {
 
     List<Feedback> findByContentId(String contentId);
+
+    List<Feedback> findByContentIdIn(Collection<String> contentIds);
 }
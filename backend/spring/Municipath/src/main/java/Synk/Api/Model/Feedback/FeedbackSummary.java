@@ -0,0 +1,79 @@
+package Synk.Api.Model.Feedback;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+/**
+ * somma e numero dei voti di un contenuto,
+ * aggiornati ad ogni valutazione cosi' che il
+ * punteggio non vada ricalcolato da tutti i voti
+ */
+@Entity
+public class FeedbackSummary {
+
+    @Id
+    private String contentId;
+    private double voteSum;
+    private int voteCount;
+
+    public FeedbackSummary(String contentId, double voteSum, int voteCount) {
+        this.contentId = contentId;
+        this.voteSum = voteSum;
+        this.voteCount = voteCount;
+    }
+
+    public FeedbackSummary(){
+    }
+
+    public String getContentId() {
+        return contentId;
+    }
+
+    public void setContentId(String contentId) {
+        this.contentId = contentId;
+    }
+
+    public double getVoteSum() {
+        return voteSum;
+    }
+
+    public void setVoteSum(double voteSum) {
+        this.voteSum = voteSum;
+    }
+
+    public int getVoteCount() {
+        return voteCount;
+    }
+
+    public void setVoteCount(int voteCount) {
+        this.voteCount = voteCount;
+    }
+
+    /**
+     * aggiorna il riepilogo con un voto nuovo o modificato
+     * @param delta variazione della somma dei voti
+     * @param added variazione del numero di voti
+     */
+    public void addVote(double delta, int added) {
+        this.voteSum += delta;
+        this.voteCount += added;
+    }
+
+    /**
+     * @return punteggio medio e numero di voti
+     */
+    public Score toScore() {
+        return toScore(voteSum, voteCount);
+    }
+
+    /**
+     * @param voteSum somma dei voti
+     * @param voteCount numero di voti
+     * @return punteggio medio e numero di voti
+     */
+    public static Score toScore(double voteSum, int voteCount) {
+        if(voteCount == 0)
+            return new Score(0, 0);
+        return new Score((float) (voteSum / voteCount), voteCount);
+    }
+}
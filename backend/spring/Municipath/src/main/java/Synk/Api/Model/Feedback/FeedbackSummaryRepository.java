@@ -0,0 +1,24 @@
+package Synk.Api.Model.Feedback;
+
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.persistence.LockModeType;
+
+public interface FeedbackSummaryRepository extends CrudRepository<FeedbackSummary, String> {
+
+	/**
+	 * legge il riepilogo di un contenuto bloccandolo fino alla
+	 * fine della transazione: le valutazioni dello stesso
+	 * contenuto vengono cosi' applicate una alla volta
+	 * @param contentId id del contenuto
+	 * @return riepilogo, vuoto se non esiste
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select s from FeedbackSummary s where s.contentId = :contentId")
+	Optional<FeedbackSummary> findByIdForUpdate(@Param("contentId") String contentId);
+}
@@ -12,14 +12,17 @@ import Synk.Api.Model.MetaData;
 import Synk.Api.Model.Feedback.Score;
 import Synk.Api.Model.Pending.PendingRequest;
 import Synk.Api.View.ViewModel.ProtoGroup;
+import jakarta.persistence.CollectionTable;
 import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
 
 @Entity
-@Table(name = "groups")
+@Table(name = "groups", indexes = { @Index(name = "idx_groups_city_publication", columnList = "cityId, publicationTime"),
+		@Index(name = "idx_groups_ending", columnList = "persistence, endTime") })
 public class Group implements MetaData {
 	
 	@Id
@@ -35,6 +38,7 @@ public class Group implements MetaData {
     private LocalDateTime publicationTime;
     @ElementCollection
     @Fetch(FetchMode.JOIN)
+    @CollectionTable(name = "group_posts", indexes = @Index(name = "idx_group_posts_post", columnList = "posts"))
     private List<String> posts;
     private boolean ofCity;
     private int viewsCount;
@@ -140,7 +144,7 @@ public class Group implements MetaData {
 		return posts;
 	}
 	public void removePost(String post) {
-		this.posts.remove(post);
+		this.posts.removeIf(post::equals);
 	}
 	
 	public LocalDateTime getPublicationTime() {
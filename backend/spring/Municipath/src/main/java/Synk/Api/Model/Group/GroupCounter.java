@@ -0,0 +1,63 @@
+package Synk.Api.Model.Group;
+
+import org.springframework.data.domain.Persistable;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.Transient;
+
+/**
+ * contatore degli id dei gruppi di un comune:
+ * contiene il numero del prossimo gruppo da creare.
+ * un contatore nuovo viene sempre inserito, mai unito
+ * ad uno esistente, cosi' che due creazioni contemporanee
+ * non possano sovrascriversi a vicenda
+ */
+@Entity
+public class GroupCounter implements Persistable<String> {
+
+	@Id
+	private String cityId;
+	private int nextId;
+	@Transient
+	private boolean created = true;
+
+	public GroupCounter(String cityId, int nextId) {
+		this.cityId = cityId;
+		this.nextId = nextId;
+	}
+
+	public GroupCounter() {}
+
+	@PostLoad
+	private void loaded() {
+		this.created = false;
+	}
+
+	@Override
+	public String getId() {
+		return cityId;
+	}
+
+	@Override
+	public boolean isNew() {
+		return created;
+	}
+
+	public String getCityId() {
+		return cityId;
+	}
+
+	public void setCityId(String cityId) {
+		this.cityId = cityId;
+	}
+
+	public int getNextId() {
+		return nextId;
+	}
+
+	public void setNextId(int nextId) {
+		this.nextId = nextId;
+	}
+}
@@ -0,0 +1,20 @@
+package Synk.Api.Model.Group;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+public interface GroupCounterRepository extends CrudRepository<GroupCounter, String> {
+
+	/**
+	 * avanza il contatore di un comune con un solo aggiornamento
+	 * atomico: la riga resta bloccata fino alla fine della
+	 * transazione, quindi due allocazioni non leggono mai lo stesso valore
+	 * @param cityId id del comune
+	 * @return numero di righe aggiornate, 0 se il contatore non esiste
+	 */
+	@Modifying(clearAutomatically = true)
+	@Query("update GroupCounter c set c.nextId = c.nextId + 1 where c.cityId = :cityId")
+	int increment(@Param("cityId") String cityId);
+}
@@ -1,9 +1,86 @@
 package Synk.Api.Model.Group;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import Synk.Api.Model.TimedContent;
+import Synk.Api.Model.Analysis.ContentData;
 
 public interface GroupRepository extends CrudRepository<Group, String> {
+
+	@EntityGraph(attributePaths = "posts")
 	List<Group> findByCityId(String cityId);
+
+	/**
+	 * cerca i gruppi che contengono un post, usando
+	 * l'indice sulla tabella dei post dei gruppi
+	 * @param postId id del post
+	 * @return gruppi che lo contengono
+	 */
+	@EntityGraph(attributePaths = "posts")
+	@Query("select distinct g from Group g join g.posts p where p = :postId")
+	List<Group> findByPost(@Param("postId") String postId);
+
+	/**
+	 * cerca i gruppi che contengono almeno uno dei post
+	 * @param postIds id dei post
+	 * @return gruppi che ne contengono qualcuno
+	 */
+	@EntityGraph(attributePaths = "posts")
+	@Query("select distinct g from Group g join g.posts p where p in :postIds")
+	List<Group> findByPosts(@Param("postIds") Collection<String> postIds);
+
+	/**
+	 * legge i dati per le analisi dei gruppi di un comune pubblicati
+	 * in un intervallo, gia' filtrati e uniti al riepilogo dei voti.
+	 * usa l'indice su comune e data di pubblicazione
+	 * @param cityId id del comune
+	 * @param from inizio dell'intervallo, incluso
+	 * @param to fine dell'intervallo, escluso
+	 * @param onlyUsers se ignorare i contenuti dello staff
+	 * @return dati richiesti
+	 */
+	@Query("select new Synk.Api.Model.Analysis.ContentData(c.id, c.cityId, c.author, c.publicationTime, "
+			+ "c.viewsCount, c.ofCity, s.voteSum, s.voteCount) from Group c "
+			+ "left join FeedbackSummary s on s.contentId = c.id "
+			+ "where c.cityId = :cityId and c.publicationTime >= :from and c.publicationTime < :to "
+			+ "and (:onlyUsers = false or c.ofCity = false)")
+	List<ContentData> findDataForAnalysis(@Param("cityId") String cityId, @Param("from") LocalDateTime from,
+			@Param("to") LocalDateTime to, @Param("onlyUsers") boolean onlyUsers);
+
+	/**
+	 * legge id e data di fine dei gruppi non persistenti,
+	 * usando l'indice sulla data di fine
+	 * @return gruppi a tempo
+	 */
+	List<TimedContent> findByPersistenceFalseAndEndTimeNotNull();
+
+	/**
+	 * tra i gruppi indicati, cerca quelli non persistenti
+	 * gia' finiti. serve a ricontrollare in una sola query
+	 * i gruppi tolti dalla coda delle scadenze
+	 * @param ids id dei gruppi
+	 * @param now momento del controllo
+	 * @return gruppi finiti
+	 */
+	@Query("select g from Group g where g.id in :ids and g.persistence = false and g.endTime < :now")
+	List<Group> findEnded(@Param("ids") Collection<String> ids, @Param("now") LocalDateTime now);
+
+	/**
+	 * aggiunge una visualizzazione con un solo aggiornamento,
+	 * senza riscrivere il gruppo: un gruppo eliminato nel
+	 * frattempo non viene ricreato
+	 * @param id id del gruppo
+	 * @return 1 se il gruppo esiste, 0 altrimenti
+	 */
+	@Modifying
+	@Query("update Group g set g.viewsCount = g.viewsCount + 1 where g.id = :id")
+	int addView(@Param("id") String id);
 }
@@ -8,6 +8,7 @@ import jakarta.persistence.Embedded;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Transient;
+import jakarta.persistence.Version;
 
 
 //@JoinColumn(name = "pointId", referencedColumnName = "pointId")
@@ -26,6 +27,12 @@ public class Point {
     @Transient
     private List<Post> posts;
 	private int idCount;
+	/**
+	 * versione del punto: due richieste che lo modificano
+	 * insieme non possono sovrascriversi a vicenda
+	 */
+	@Version
+	private Long version;
     
 	/**
 	 * costruttore vuoto del Point, per le logiche jpa
@@ -113,6 +120,14 @@ public class Point {
 		this.idCount = idCount;
 	}
     
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+    
 	public String getNewPostId() {
 		return this.pointId + "." + this.idCount++;
 	}
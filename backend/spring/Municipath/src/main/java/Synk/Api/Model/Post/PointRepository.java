@@ -1,11 +1,21 @@
 package Synk.Api.Model.Post;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.persistence.LockModeType;
 
 public interface PointRepository extends CrudRepository<Point, String> {
 	
 	List<Point> findByCityId(String cityId);
 	
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select p from Point p where p.pointId in :ids")
+	List<Point> findAllByIdForUpdate(@Param("ids") Collection<String> ids);
+	
 }
@@ -18,9 +18,13 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
 
 @Entity
+@Table(indexes = { @Index(name = "idx_post_city_publication", columnList = "cityId, publicationTime"),
+		@Index(name = "idx_post_ending", columnList = "persistence, endTime") })
 public class Post implements MetaData {
 	
 
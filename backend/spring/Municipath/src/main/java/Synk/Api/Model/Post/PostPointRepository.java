@@ -2,7 +2,8 @@ package Synk.Api.Model.Post;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.StreamSupport;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Repository;
 
@@ -45,20 +46,59 @@ public class PostPointRepository {
 	
 	public List<Point> findByCityId(String cityId){
 		List<Point> list = this.pointRepo.findByCityId(cityId);
-		list.forEach(p -> addAllPosts(p));
+		addAllPosts(list, this.postRepo.findByCityId(cityId));
 		return list;
 	}
 	
+	public List<Point> findAllById(List<String> pointIds){
+		List<Point> list = new ArrayList<>();
+		this.pointRepo.findAllById(pointIds).forEach(list::add);
+		addAllPosts(list, this.postRepo.findByPointIdIn(pointIds));
+		return list;
+	}
+	
+	public List<Point> findByCityIdWithoutPosts(String cityId){
+		return this.pointRepo.findByCityId(cityId);
+	}
+	
+	/**
+	 * legge i punti senza i loro post, bloccandoli fino alla
+	 * fine della transazione: nessun post puo' esservi
+	 * aggiunto finche' non si decide se eliminarli
+	 * @param pointIds id dei punti
+	 * @return punti trovati
+	 */
+	public List<Point> findAllByIdForUpdate(List<String> pointIds){
+		if(pointIds.isEmpty())
+			return new ArrayList<>();
+		return this.pointRepo.findAllByIdForUpdate(pointIds);
+	}
+	
 	public List<Point> findAll(){
-		return StreamSupport.stream(pointRepo.findAll().spliterator(), true)
-				.map(p -> {
-					addAllPosts(p);
-					return p;
-		}).toList();
+		List<Point> list = new ArrayList<>();
+		this.pointRepo.findAll().forEach(list::add);
+		List<Post> posts = new ArrayList<>();
+		this.postRepo.findAll().forEach(posts::add);
+		addAllPosts(list, posts);
+		return list;
 	}
 	
 	private void addAllPosts(Point point) {
 		point.setPosts(new ArrayList<>(this.postRepo.findByPointId(point.getPointId())));
 	}
 	
+	/**
+	 * assegna ad ogni punto i suoi post, raggruppando in memoria
+	 * quelli gia' letti con una sola query, invece di
+	 * interrogare il database una volta per punto
+	 * @param points punti da completare
+	 * @param posts post letti per quei punti
+	 */
+	private void addAllPosts(List<Point> points, List<Post> posts) {
+		Map<String, List<Post>> byPoint = posts.stream()
+				.collect(Collectors.groupingBy(Post::getPointId));
+		points.forEach(p -> p.setPosts(new ArrayList<>(
+				byPoint.getOrDefault(p.getPointId(), new ArrayList<>()))));
+	}
+	
 }
@@ -1,12 +1,88 @@
 package Synk.Api.Model.Post;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import Synk.Api.Model.TimedContent;
+import Synk.Api.Model.Analysis.ContentData;
 
 public interface PostRepository extends CrudRepository<Post, String> {
 	
+	@EntityGraph(attributePaths = "multimediaData")
 	List<Post> findByCityId(String cityId);
 	
+	@EntityGraph(attributePaths = "multimediaData")
 	List<Post> findByPointId(String pointId);
+	
+	@EntityGraph(attributePaths = "multimediaData")
+	List<Post> findByPointIdIn(List<String> pointIds);
+	
+	@Override
+	@EntityGraph(attributePaths = "multimediaData")
+	Iterable<Post> findAll();
+	
+	/**
+	 * legge i dati per le analisi dei post di un comune pubblicati
+	 * in un intervallo, gia' filtrati e uniti al riepilogo dei voti.
+	 * usa l'indice su comune e data di pubblicazione
+	 * @param cityId id del comune
+	 * @param from inizio dell'intervallo, incluso
+	 * @param to fine dell'intervallo, escluso
+	 * @param onlyUsers se ignorare i contenuti dello staff
+	 * @return dati richiesti
+	 */
+	@Query("select new Synk.Api.Model.Analysis.ContentData(c.id, c.cityId, c.author, c.publicationTime, "
+			+ "c.viewsCount, c.ofCity, s.voteSum, s.voteCount) from Post c "
+			+ "left join FeedbackSummary s on s.contentId = c.id "
+			+ "where c.cityId = :cityId and c.publicationTime >= :from and c.publicationTime < :to "
+			+ "and (:onlyUsers = false or c.ofCity = false)")
+	List<ContentData> findDataForAnalysis(@Param("cityId") String cityId, @Param("from") LocalDateTime from,
+			@Param("to") LocalDateTime to, @Param("onlyUsers") boolean onlyUsers);
+	
+	/**
+	 * legge id e data di fine dei post non persistenti
+	 * di un tipo, usando l'indice sulla data di fine
+	 * @param type tipo dei post
+	 * @return post a tempo
+	 */
+	List<TimedContent> findByPersistenceFalseAndTypeAndEndTimeNotNull(PostType type);
+	
+	/**
+	 * tra i post indicati, cerca gli eventi non persistenti
+	 * gia' finiti. serve a ricontrollare in una sola query
+	 * i post tolti dalla coda delle scadenze
+	 * @param ids id dei post
+	 * @param type tipo dei post da eliminare
+	 * @param now momento del controllo
+	 * @return post finiti
+	 */
+	@Query("select p from Post p where p.id in :ids and p.persistence = false "
+			+ "and p.type = :type and p.endTime < :now")
+	List<Post> findEnded(@Param("ids") Collection<String> ids, @Param("type") PostType type,
+			@Param("now") LocalDateTime now);
+	
+	/**
+	 * @param pointIds id dei punti
+	 * @return id dei punti indicati che hanno ancora almeno un post
+	 */
+	@Query("select distinct p.pointId from Post p where p.pointId in :pointIds")
+	List<String> findUsedPointIds(@Param("pointIds") Collection<String> pointIds);
+	
+	/**
+	 * aggiunge una visualizzazione con un solo aggiornamento,
+	 * senza riscrivere il post: un post eliminato nel
+	 * frattempo non viene ricreato
+	 * @param id id del post
+	 * @return 1 se il post esiste, 0 altrimenti
+	 */
+	@Modifying
+	@Query("update Post p set p.viewsCount = p.viewsCount + 1 where p.id = :id")
+	int addView(@Param("id") String id);
 }
@@ -1,47 +1,36 @@
 package Synk.Api.Model.Post.WeatherService;
 
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
-
-import Synk.Api.Model.Post.Position;
-
 public class Prediction {
-	
-	private Position position;
-	private LocalDateTime time;
+
 	private String meteo;
-	
-	public Prediction(Position position, LocalDateTime time, String meteo) {
-		this.position = position;
-		this.time = time;
-		this.meteo = meteo;
-	}
-	
+	private long expiration;
+
 	/**
-	 * metodo per controllare se due una posizione e un momento
-	 * possono corrispondere a quello della predizione
-	 * @param position posizione
-	 * @param time momento
-	 * @return true se sono simili, false altrimenti
+	 * costruttore della previsione
+	 * @param meteo previsione ottenuta
+	 * @param expiration istante, in millisecondi, oltre il
+	 * quale la previsione non e' piu' valida
 	 */
-	public boolean almostEquals(Position position, LocalDateTime time) {
-		return this.position.almostEquals(position) && almostEquals(this.time, time);
+	public Prediction(String meteo, long expiration) {
+		this.meteo = meteo;
+		this.expiration = expiration;
 	}
-	
+
 	/**
-	 * metodo privato per vedere se due momenti sono 
-	 * vicini di almeno tre ore.
-	 * @param t1 primo momento
-	 * @param t2 secondo momento
-	 * @return true se la loro distanza e' minore di
-	 * tre ore, false altrimenti
+	 * metodo per controllare se la previsione e' scaduta
+	 * @param now istante attuale in millisecondi
+	 * @return true se e' scaduta, false altrimenti
 	 */
-	private boolean almostEquals(LocalDateTime t1, LocalDateTime t2) {
-		return Math.abs(ChronoUnit.HOURS.between(t1, t2)) < 3;
+	public boolean isExpired(long now) {
+		return now >= this.expiration;
 	}
 
 	public String getMeteo() {
 		return meteo;
 	}
-	
+
+	public long getExpiration() {
+		return expiration;
+	}
+
 }
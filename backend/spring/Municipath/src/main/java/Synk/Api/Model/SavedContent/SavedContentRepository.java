@@ -2,9 +2,11 @@ package Synk.Api.Model.SavedContent;
 
 import org.springframework.data.repository.CrudRepository;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface SavedContentRepository extends CrudRepository<SavedContent, String> {
     List<SavedContent> findByContentId(String contentId);
+    List<SavedContent> findByContentIdIn(Collection<String> contentIds);
     List<SavedContent> findByUsername(String username);
 }
@@ -0,0 +1,15 @@
+package Synk.Api.Model;
+
+import java.time.LocalDateTime;
+
+/**
+ * contenuto a tempo, letto solo per
+ * sapere quando deve essere rimosso
+ */
+public interface TimedContent {
+
+	public String getId();
+
+	public LocalDateTime getEndTime();
+
+}
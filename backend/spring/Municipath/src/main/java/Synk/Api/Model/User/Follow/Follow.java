@@ -1,5 +1,7 @@
 package Synk.Api.Model.User.Follow;
 
+import java.time.LocalDateTime;
+
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 
@@ -10,6 +12,11 @@ public class Follow {
 	private String id;
     private String followed;
     private String username;
+    /**
+     * momento da cui l'utente segue: le notifiche
+     * uniche precedenti non gli vengono mostrate
+     */
+    private LocalDateTime since;
     
 	public Follow() { }
 	
@@ -17,6 +24,7 @@ public class Follow {
 		this.id = id;
 		this.followed = followed;
 		this.username = username;
+		this.since = LocalDateTime.now();
 	}
 	public String getId() {
 		return id;
@@ -36,6 +44,12 @@ public class Follow {
 	public void setUsername(String username) {
 		this.username = username;
 	}
+	public LocalDateTime getSince() {
+		return since;
+	}
+	public void setSince(LocalDateTime since) {
+		this.since = since;
+	}
 
 	@Override
 	public int hashCode() {
@@ -9,5 +9,7 @@ public interface FollowRepository extends CrudRepository<Follow, String> {
 	List<Follow> findByUsername(String username);
 
 	List<Follow> findByFollowed(String followed);
+
+	long countByFollowed(String followed);
 	
 }
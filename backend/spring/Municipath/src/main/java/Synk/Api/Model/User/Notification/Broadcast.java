@@ -0,0 +1,108 @@
+package Synk.Api.Model.User.Notification;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * notifica unica per tutti i seguaci di un comune o di un
+ * contributor: viene scritta una sola volta e unita alle
+ * notifiche di ogni utente quando le legge. l'id viene dallo
+ * stesso generatore delle notifiche, cosi' che le due si
+ * possano ordinare insieme
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_broadcast_source", columnList = "source, id"))
+public class Broadcast {
+
+    @Id
+    private String id;
+    private String author;
+    private String text;
+    private String contentId;
+    private String source;
+    private LocalDateTime date;
+
+    /**
+     * @param author autore del messaggio
+     * @param text messaggio
+     * @param contentId id del contenuto
+     * @param source chi e' seguito: "c." + id del comune
+     * oppure "u." + username del contributor
+     */
+    public Broadcast(String author, String text, String contentId, String source) {
+        this.author = author;
+        this.text = text;
+        this.contentId = contentId;
+        this.source = source;
+        this.date = LocalDateTime.now();
+        this.id = NotificationId.next();
+    }
+
+    public Broadcast() {
+    }
+
+    /**
+     * @param receiver utente che legge la notifica
+     * @param read se l'utente l'ha gia' letta
+     * @return la notifica come la vede l'utente
+     */
+    public Notification toNotification(String receiver, boolean read) {
+        Notification notification = new Notification(author, text, contentId, receiver);
+        notification.setId(id);
+        notification.setDate(date);
+        notification.setRead(read);
+        return notification;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public String getContentId() {
+        return contentId;
+    }
+
+    public void setContentId(String contentId) {
+        this.contentId = contentId;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public LocalDateTime getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDateTime date) {
+        this.date = date;
+    }
+}
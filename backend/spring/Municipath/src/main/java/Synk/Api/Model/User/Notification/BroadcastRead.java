@@ -0,0 +1,49 @@
+package Synk.Api.Model.User.Notification;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+/**
+ * segna che un utente ha letto una notifica unica
+ */
+@Entity
+public class BroadcastRead {
+
+    @Id
+    private String id;
+    private String username;
+    private String broadcastId;
+
+    public BroadcastRead(String username, String broadcastId) {
+        this.id = username + "." + broadcastId;
+        this.username = username;
+        this.broadcastId = broadcastId;
+    }
+
+    public BroadcastRead() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getBroadcastId() {
+        return broadcastId;
+    }
+
+    public void setBroadcastId(String broadcastId) {
+        this.broadcastId = broadcastId;
+    }
+}
@@ -0,0 +1,21 @@
+package Synk.Api.Model.User.Notification;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+public interface BroadcastReadRepository extends CrudRepository<BroadcastRead, String> {
+    List<BroadcastRead> findByUsername(String username);
+
+    List<BroadcastRead> findByUsernameAndBroadcastIdIn(String username, Collection<String> broadcastIds);
+
+    @Modifying
+    @Query("delete from BroadcastRead r where r.broadcastId in "
+    		+ "(select b.id from Broadcast b where b.date < :limit)")
+    int deleteOfBroadcastsBefore(@Param("limit") LocalDateTime limit);
+}
@@ -0,0 +1,52 @@
+package Synk.Api.Model.User.Notification;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+public interface BroadcastRepository extends CrudRepository<Broadcast, String> {
+
+    /**
+     * condizione: solo le notifiche uniche pubblicate da quando
+     * l'utente segue il comune o il contributor
+     */
+    String FOLLOWED_SINCE = "and exists (select f from Follow f "
+    		+ "where f.id = concat(:username, '.', b.source) and f.since <= b.date)";
+
+    List<Broadcast> findBySourceIn(Collection<String> sources);
+
+    /**
+     * notifiche uniche dei comuni e contributor seguiti, pubblicate
+     * da quando l'utente li segue, che non ha ancora letto.
+     * l'id di un follow e' il nome utente seguito dalla chiave
+     */
+    @Query("select count(b) from Broadcast b where b.source in :sources " + FOLLOWED_SINCE + " and not exists "
+    		+ "(select r from BroadcastRead r where r.username = :username and r.broadcastId = b.id)")
+    long countUnread(@Param("username") String username, @Param("sources") Collection<String> sources);
+
+    @Query("select b from Broadcast b where b.source in :sources " + FOLLOWED_SINCE + " order by b.id desc")
+    List<Broadcast> findPage(@Param("username") String username, @Param("sources") Collection<String> sources,
+    		Pageable page);
+
+    @Query("select b from Broadcast b where b.source in :sources and b.id < :id " + FOLLOWED_SINCE
+    		+ " order by b.id desc")
+    List<Broadcast> findPageBefore(@Param("username") String username, @Param("sources") Collection<String> sources,
+    		@Param("id") String id, Pageable page);
+
+    /**
+     * notifica unica, se pubblicata da quando l'utente ne segue la chiave
+     */
+    @Query("select b from Broadcast b where b.id = :id " + FOLLOWED_SINCE)
+    Optional<Broadcast> findVisible(@Param("username") String username, @Param("id") String id);
+
+    @Modifying
+    @Query("delete from Broadcast b where b.date < :limit")
+    int deleteBefore(@Param("limit") LocalDateTime limit);
+}
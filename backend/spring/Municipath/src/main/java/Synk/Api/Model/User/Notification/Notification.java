@@ -2,11 +2,28 @@ package Synk.Api.Model.User.Notification;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 
 import java.time.LocalDateTime;
 
+import org.springframework.data.domain.Persistable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * una notifica nuova viene sempre inserita senza
+ * controllare prima il database, cosi' che le notifiche
+ * di un evento possano essere salvate a blocchi.
+ * l'id segue l'ordine di creazione, vedi {@link NotificationId}
+ */
 @Entity
-public class Notification {
+@Table(indexes = {
+		@Index(name = "idx_notification_inbox", columnList = "receiver, Id"),
+		@Index(name = "idx_notification_read", columnList = "isRead, date") })
+public class Notification implements Persistable<String> {
 
     private String author;
     private LocalDateTime date;
@@ -16,6 +33,8 @@ public class Notification {
     private String receiver;
     @Id
     private String Id;
+    @Transient
+    private boolean created = true;
 
     public Notification(String author, String text, String contentId, String receiver) {
         this.author = author;
@@ -24,7 +43,7 @@ public class Notification {
         this.contentId = contentId;
         this.isRead = false;
         this.receiver = receiver;
-        this.Id = contentId + "." + date.getNano();
+        this.Id = NotificationId.next();
     }
 
     public Notification() {
@@ -78,10 +97,22 @@ public class Notification {
         this.receiver = receiver;
     }
 
+    @Override
     public String getId() {
         return Id;
     }
 
+    @PostLoad
+    private void loaded() {
+        this.created = false;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return created;
+    }
+
     public void setId(String id) {
         Id = id;
     }
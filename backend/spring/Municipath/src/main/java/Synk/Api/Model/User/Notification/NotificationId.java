@@ -0,0 +1,65 @@
+package Synk.Api.Model.User.Notification;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * generatore degli id delle notifiche. ogni id e' un numero a 64 bit
+ * formato dai millisecondi trascorsi dal primo gennaio 2024 e da un
+ * progressivo di 22 bit, scritto in base 32 su 13 caratteri fissi:
+ * l'ordine alfabetico degli id e' quindi l'ordine di creazione.
+ * gli id non si ripetono mai nello stesso processo, anche se
+ * richiesti da piu' thread nello stesso millisecondo o se
+ * l'orologio torna indietro, e non si usano lock.
+ */
+public final class NotificationId {
+
+	private static final long EPOCH = 1704067200000L;
+	private static final int SEQUENCE_BITS = 22, LENGTH = 13;
+	private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+	/**
+	 * ultimo valore assegnato
+	 */
+	private static final AtomicLong LAST = new AtomicLong();
+
+	private NotificationId() {
+	}
+
+	/**
+	 * @return nuovo id, maggiore di tutti quelli gia' assegnati
+	 */
+	public static String next() {
+		return encode(nextValue(System.currentTimeMillis()));
+	}
+
+	/**
+	 * assegna il valore successivo: quello del millisecondo
+	 * indicato se e' piu' avanti dell'ultimo assegnato, altrimenti
+	 * l'ultimo piu' uno. se il progressivo di un millisecondo si
+	 * esaurisce si passa, in anticipo, al millisecondo dopo
+	 * @param millis istante di creazione
+	 * @return valore assegnato
+	 */
+	private static long nextValue(long millis) {
+		long now = (millis - EPOCH) << SEQUENCE_BITS;
+		while(true) {
+			long last = LAST.get();
+			long next = Math.max(now, last + 1);
+			if(LAST.compareAndSet(last, next))
+				return next;
+		}
+	}
+
+	/**
+	 * @param value valore non negativo
+	 * @return valore in base 32 su lunghezza fissa
+	 */
+	private static String encode(long value) {
+		char[] chars = new char[LENGTH];
+		for(int i = LENGTH - 1; i >= 0; i--) {
+			chars[i] = ALPHABET[(int) (value & 31)];
+			value >>>= 5;
+		}
+		return new String(chars);
+	}
+}
@@ -1,9 +1,39 @@
 package Synk.Api.Model.User.Notification;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface NotificationRepository extends CrudRepository<Notification, String> {
     List<Notification> findByReceiver(String receiver);
+
+    /**
+     * prima pagina delle notifiche di un utente, dalla piu' recente
+     */
+    @Query("select n from Notification n where n.receiver = :receiver order by n.Id desc")
+    List<Notification> findPage(@Param("receiver") String receiver, Pageable page);
+
+    /**
+     * pagina delle notifiche di un utente che vengono
+     * dopo, in ordine, la notifica indicata dal cursore
+     */
+    @Query("select n from Notification n where n.receiver = :receiver and n.Id < :id order by n.Id desc")
+    List<Notification> findPageBefore(@Param("receiver") String receiver, @Param("id") String id, Pageable page);
+
+    /**
+     * segna come letta una notifica, solo se non lo era gia'
+     * @return 1 se la notifica e' stata segnata ora, 0 altrimenti
+     */
+    @Modifying
+    @Query("update Notification n set n.isRead = true where n.Id = :id and n.isRead = false")
+    int markRead(@Param("id") String id);
+
+    @Modifying
+    @Query("delete from Notification n where n.isRead = true and n.date < :limit")
+    int deleteReadBefore(@Param("limit") LocalDateTime limit);
 }
@@ -0,0 +1,61 @@
+package Synk.Api.Model.User.Notification;
+
+import org.springframework.data.domain.Persistable;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.Transient;
+
+/**
+ * numero di notifiche non lette di un utente, aggiornato
+ * ad ogni consegna e lettura cosi' da non doverle contare
+ */
+@Entity
+public class UnreadCounter implements Persistable<String> {
+
+    @Id
+    private String username;
+    private long unread;
+    @Transient
+    private boolean created = true;
+
+    public UnreadCounter(String username, long unread) {
+        this.username = username;
+        this.unread = unread;
+    }
+
+    public UnreadCounter() {
+    }
+
+    @PostLoad
+    private void loaded() {
+        this.created = false;
+    }
+
+    @Override
+    public String getId() {
+        return username;
+    }
+
+    @Override
+    public boolean isNew() {
+        return created;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public long getUnread() {
+        return unread;
+    }
+
+    public void setUnread(long unread) {
+        this.unread = unread;
+    }
+}
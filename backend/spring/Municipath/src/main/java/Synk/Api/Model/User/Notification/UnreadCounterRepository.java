@@ -0,0 +1,22 @@
+package Synk.Api.Model.User.Notification;
+
+import java.util.Collection;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+public interface UnreadCounterRepository extends CrudRepository<UnreadCounter, String> {
+
+	/**
+	 * aggiunge lo stesso valore ai contatori di piu' utenti
+	 * con un solo aggiornamento
+	 * @param usernames utenti da aggiornare
+	 * @param delta valore da aggiungere
+	 * @return numero di contatori aggiornati
+	 */
+	@Modifying
+	@Query("update UnreadCounter c set c.unread = c.unread + :delta where c.username in :usernames")
+	int add(@Param("usernames") Collection<String> usernames, @Param("delta") long delta);
+}
@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -13,6 +14,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import Synk.Api.Controller.City.CityHandler;
 import Synk.Api.Controller.Feedback.FeedbackHandler;
@@ -116,14 +118,34 @@ public class RestTouristContoller {
     }
     
 	@GetMapping(value="/api/v1/msgs")
-    public ResponseEntity<Object> getMyMessages(@RequestHeader(name="authenticator") String token){
+    public ResponseEntity<Object> getMyMessages(@RequestHeader(name="authenticator") String token,
+    											@RequestParam(name="beforeId", required=false) String beforeId,
+    											@RequestParam(name="limit", defaultValue="50") int limit){
 		String username = authenticator.getUsername(token);
-    	List<Notification> list = this.uh.getMyMessages(username);
+    	List<Notification> list = this.uh.getMyMessages(username, beforeId, limit);
     	if(list != null)
     		return new ResponseEntity<Object>(list, HttpStatus.OK);
     	else return new ResponseEntity<Object>(HttpStatus.NOT_FOUND);
 	}
 	
+	@GetMapping(value="/api/v1/msgs/stream", produces=MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamMessages(@RequestHeader(name="authenticator") String token){
+		String username = authenticator.getUsername(token);
+    	SseEmitter emitter = this.uh.subscribe(username);
+    	if(emitter != null)
+    		return new ResponseEntity<SseEmitter>(emitter, HttpStatus.OK);
+    	else return new ResponseEntity<SseEmitter>(HttpStatus.NOT_FOUND);
+	}
+	
+	@GetMapping(value="/api/v1/msgs/unread")
+    public ResponseEntity<Object> getUnreadCount(@RequestHeader(name="authenticator") String token){
+		String username = authenticator.getUsername(token);
+    	long unread = this.uh.getUnreadCount(username);
+    	if(unread >= 0)
+    		return new ResponseEntity<Object>(unread, HttpStatus.OK);
+    	else return new ResponseEntity<Object>(HttpStatus.NOT_FOUND);
+	}
+	
 	@GetMapping(value="/api/v1/msg/{msgId}")
 	public ResponseEntity<Object> getMyMessage(@RequestHeader(name="authenticator") String token,
 												@PathVariable("msgId") String msgId) {
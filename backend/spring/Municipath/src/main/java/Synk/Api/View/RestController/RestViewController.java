@@ -7,6 +7,7 @@ import Synk.Api.Controller.SavedContent.SavedContentHandler;
 import Synk.Api.Model.City.City;
 import Synk.Api.Model.Group.Group;
 import Synk.Api.Model.Post.Point;
+import Synk.Api.Model.Post.Position;
 import Synk.Api.Model.Post.Post;
 import Synk.Api.View.Auth.Authenticator;
 import jakarta.websocket.server.PathParam;
@@ -85,9 +86,16 @@ public class RestViewController {
 
     @GetMapping(value="/api/v1/city/{cityId}/points")
     public ResponseEntity<Object> getPoints(@RequestHeader(name="auth") String token,
-                                            @PathVariable("cityId") String cityId) {
+                                            @PathVariable("cityId") String cityId,
+                                            @RequestParam(name="minLat", required=false) Double minLat,
+                                            @RequestParam(name="minLng", required=false) Double minLng,
+                                            @RequestParam(name="maxLat", required=false) Double maxLat,
+                                            @RequestParam(name="maxLng", required=false) Double maxLng) {
         String username = authenticator.getUsername(token);
-        List<Point> list = this.poh.getPoints(cityId, username);
+        List<Point> list;
+        if(minLat != null && minLng != null && maxLat != null && maxLng != null)
+            list = this.poh.getPoints(cityId, username, new Position(minLat, minLng), new Position(maxLat, maxLng));
+        else list = this.poh.getPoints(cityId, username);
         if(list != null) {
             return new ResponseEntity<Object>(list, HttpStatus.OK);
         } else {
@@ -0,0 +1,84 @@
+package Synk.Api.Controller.Analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import Synk.Api.Controller.Analysis.AnalysisHandlerTests.Item;
+import Synk.Api.Model.MetaData;
+import Synk.Api.Model.Analysis.Analysis;
+import Synk.Api.Model.Feedback.Score;
+
+/**
+ * misure delle prestazioni delle analisi. non fanno parte
+ * dei test: si eseguono con mvn test -Pbenchmark, che
+ * stampa i tempi misurati
+ */
+@Tag("benchmark")
+public class AnalysisBenchmarks {
+
+	/**
+	 * misura le classifiche su un mese finto di un milione di dati,
+	 * generati man mano per non misurare anche la memoria occupata
+	 */
+	@Test
+	public void topAnalyzers() {
+		for(int k : new int[] {5, 100}) {
+			TopViewedMonthAnalyzer viewed = new TopViewedMonthAnalyzer(k);
+			TopLikedMonthAnalyzer liked = new TopLikedMonthAnalyzer(k);
+			TopContributorMonthAnalyzer contributors = new TopContributorMonthAnalyzer(k);
+			List<MonthAnalyzer> analyzers = List.of(viewed, liked, contributors);
+			Random random = new Random(k);
+			LocalDateTime now = LocalDateTime.now();
+			long start = System.nanoTime();
+			analyzers.forEach(MonthAnalyzer::StartAnalysis);
+			for(int i = 0; i < 1_000_000; i++) {
+				MetaData md = new Item("bench." + i, "bench", "user" + random.nextInt(5000), now,
+						random.nextInt(1_000_000), new Score(1 + random.nextInt(400) / 100f, 1 + random.nextInt(50)), false);
+				for(MonthAnalyzer analyzer : analyzers)
+					analyzer.acceptData(md);
+			}
+			long elapsed = System.nanoTime() - start;
+			assertEquals(viewed.getResult().length, k);
+			assertEquals(liked.getResult().length, k);
+			assertEquals(contributors.getResult().length, k);
+			System.out.println("top-" + k + " su 1M dati: " + elapsed / 1_000_000 + "ms");
+		}
+	}
+
+	/**
+	 * confronta l'analisi sequenziale e quella parallela dei mesi
+	 * su dodici mesi di dati finti di piu' comuni
+	 */
+	@Test
+	public void parallelMonths() {
+		List<List<MetaData>> cities = new ArrayList<>();
+		for(int c = 0; c < 4; c++)
+			cities.add(AnalysisHandlerTests.syntheticData("bench" + c, 100000, 12, c));
+		AnalysisHandler sequential = AnalysisHandlerTests.newHandler(1), parallel = AnalysisHandlerTests.newHandler(0);
+		try {
+			sequential.getAnalysis(new ArrayList<>(cities.get(0)), 12);
+			parallel.getAnalysis(new ArrayList<>(cities.get(0)), 12);
+			List<Analysis> expected = new ArrayList<>();
+			long start = System.nanoTime();
+			for(List<MetaData> data : cities)
+				expected.add(sequential.getAnalysis(new ArrayList<>(data), 12));
+			long sequentialTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			for(int c = 0; c < cities.size(); c++)
+				AnalysisHandlerTests.assertSameAnalysis(expected.get(c), parallel.getAnalysis(new ArrayList<>(cities.get(c)), 12));
+			long parallelTime = System.nanoTime() - start;
+			System.out.println("12 mesi, 4 comuni: sequenziale " + sequentialTime / 1_000_000
+					+ "ms, parallelo " + parallelTime / 1_000_000 + "ms");
+		} finally {
+			sequential.stopPool();
+			parallel.stopPool();
+		}
+	}
+}
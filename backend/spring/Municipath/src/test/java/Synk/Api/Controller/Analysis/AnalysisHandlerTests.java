@@ -2,16 +2,25 @@ package Synk.Api.Controller.Analysis;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import Synk.Api.Controller.ContentTimeModifier;
 import Synk.Api.Controller.ContentTimeModifier.TimeType;
@@ -20,7 +29,12 @@ import Synk.Api.Controller.Feedback.FeedbackHandler;
 import Synk.Api.Controller.Group.GroupHandler;
 import Synk.Api.Controller.Post.PointHandler;
 import Synk.Api.Controller.User.UserHandler;
+import Synk.Api.Model.MetaData;
+import Synk.Api.Model.Analysis.Analysis;
+import Synk.Api.Model.Analysis.MonthStats;
+import Synk.Api.Model.Analysis.MonthStatsRepository;
 import Synk.Api.Model.City.Role.Role;
+import Synk.Api.Model.Feedback.Score;
 import Synk.Api.Model.Post.Position;
 import Synk.Api.Model.Post.Post;
 import Synk.Api.Model.Post.PostType;
@@ -44,6 +58,8 @@ public class AnalysisHandlerTests {
 	UserHandler uh;
 	@Autowired
 	FeedbackHandler fh;
+	@Autowired
+	MonthStatsRepository statsRepository;
 	private final String user = "naruto000", userBase = "naruto";
 	private final Position pos = new Position(1, 2);
 	private final List<String> empty = new ArrayList<>();
@@ -69,6 +85,219 @@ public class AnalysisHandlerTests {
 
 
 
+	@Test
+	public void testConcurrentAnalyses() throws Exception {
+		List<List<MetaData>> cities = new ArrayList<>();
+		List<Analysis> expected = new ArrayList<>();
+		for(int c = 0; c < 4; c++) {
+			cities.add(syntheticData("city" + c, 20000, 6, c));
+			expected.add(ah.getAnalysis(new ArrayList<>(cities.get(c)), 6));
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Analysis>> results = new ArrayList<>();
+			for(int i = 0; i < 32; i++) {
+				List<MetaData> data = cities.get(i % 4);
+				results.add(pool.submit(() -> ah.getAnalysis(new ArrayList<>(data), 6)));
+			}
+			for(int i = 0; i < 32; i++)
+				assertSameAnalysis(expected.get(i % 4), results.get(i).get());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testClosedMonthsAreFrozen() throws InterruptedException {
+		String curator = "itachi", city = "" + ("nagoya" + 12347).hashCode();
+		uh.addUser(curator, "password");
+		uh.userValidation(curator);
+		ch.createCity("nagoya", 12347, curator, pos);
+		ProtoPost data = new ProtoPost();
+		data.setText("");
+		data.setType(PostType.SOCIAL);
+		data.setPersistence(true);
+		data.setMultimediaData(empty);
+		for(int i = 0; i < 3; i++) {
+			data.setTitle("Frozen." + i);
+			ph.createPost(curator, pos, city, data);
+		}
+		List<String> posts = ph.getPosts(city, LocalDateTime.now().minusDays(1)).stream()
+				.filter(p -> p.getTitle().startsWith("Frozen")).map(Post::getId).sorted().toList();
+		ctm.modifyTime(posts.get(0), -1, ChronoUnit.MONTHS, TimeType.PUBL);
+		ctm.modifyTime(posts.get(1), -2, ChronoUnit.MONTHS, TimeType.PUBL);
+		assertArrayEquals(ah.getAnalysis(city, 3, false).getLastMonthsPublications(), new long[] {1, 1, 2});
+		assertEquals(statsRepository.findByCityId(city).size(), 2);
+		ctm.modifyTime(posts.get(2), -1, ChronoUnit.MONTHS, TimeType.PUBL);
+		assertArrayEquals(awaitNewAnalysis(city, 3, ah.getAnalysis(city, 3, false)).getLastMonthsPublications(),
+				new long[] {1, 1, 1});
+		ch.deleteCity(city);
+		uh.removeUser(curator);
+		assertTrue(statsRepository.findByCityId(city).isEmpty());
+	}
+
+	@Test
+	public void testFrozenMonthsAreNotOverwritten() {
+		String city = "sendai";
+		YearMonth month = YearMonth.now().minusMonths(1);
+		String[] top = new String[] {"naruto", null, null};
+		statsRepository.save(new MonthStats(city, month, false, 3, 10, 4, top, top, top));
+		ReflectionTestUtils.invokeMethod(ah, "freeze", List.of(
+				new MonthStats(city, month, false, 7, 20, 2, top, top, top),
+				new MonthStats(city, month.minusMonths(1), false, 5, 8, 1, top, top, top)));
+		assertEquals(statsRepository.findById(MonthStats.idOf(city, month, false)).get().getPublications(), 3);
+		assertEquals(statsRepository.findById(MonthStats.idOf(city, month.minusMonths(1), false)).get()
+				.getPublications(), 5);
+		statsRepository.deleteAll(statsRepository.findByCityId(city));
+	}
+
+	@Test
+	public void testTopAnalyzersMatchFullSort() {
+		List<MetaData> data = syntheticData("kobe", 50000, 1, 7);
+		for(int k : new int[] {1, 5, 20}) {
+			TopViewedMonthAnalyzer viewed = new TopViewedMonthAnalyzer(k);
+			TopContributorMonthAnalyzer contributors = new TopContributorMonthAnalyzer(k);
+			DirectorAnalyzer director = new DirectorAnalyzer();
+			director.setBuilders(viewed, contributors);
+			director.make(data);
+			assertArrayEquals(data.stream().filter(d -> d.getViewsCount() > 0)
+					.sorted(Comparator.comparingInt(MetaData::getViewsCount).reversed())
+					.limit(k).map(MetaData::getId).toArray(), viewed.getResult());
+			Map<String, Integer> counts = new HashMap<>();
+			data.forEach(d -> counts.merge(d.getAuthor(), 1, Integer::sum));
+			String[] top = contributors.getResult();
+			assertEquals(top.length, k);
+			List<Integer> expected = counts.values().stream().sorted(Comparator.reverseOrder()).limit(k).toList();
+			assertEquals(expected, List.of(top).stream().map(counts::get).toList());
+		}
+	}
+
+	@Test
+	public void testPartitionByCalendarMonth() {
+		YearMonth current = YearMonth.now();
+		Score vote = new Score(0, 0);
+		List<MetaData> data = new ArrayList<>();
+		data.add(new Item("now", "x", "a", current.atDay(1).atStartOfDay(), 0, vote, false));
+		data.add(new Item("gap", "x", "a", current.minusMonths(3).atEndOfMonth().atTime(23, 59), 0, vote, false));
+		data.add(new Item("old", "x", "a", current.minusMonths(11).atDay(15).atStartOfDay(), 0, vote, false));
+		data.add(new Item("future", "x", "a", current.plusMonths(1).atDay(1).atStartOfDay(), 0, vote, false));
+		DataMonthPartitioner partitioner = new DataMonthPartitioner();
+		List<List<MetaData>> six = partitioner.divide(data, current.minusMonths(5), 6);
+		assertEquals(six.size(), 6);
+		assertEquals(six.get(2).get(0).getId(), "gap");
+		assertEquals(six.get(5).get(0).getId(), "now");
+		assertEquals(six.stream().mapToInt(List::size).sum(), 2);
+		List<List<MetaData>> twelve = partitioner.divide(data, current.minusMonths(11), 12);
+		assertEquals(twelve.size(), 12);
+		assertEquals(twelve.get(0).get(0).getId(), "old");
+		assertEquals(twelve.stream().mapToInt(List::size).sum(), 3);
+	}
+
+	/**
+	 * l'analisi parallela dei mesi deve dare lo stesso risultato
+	 * di quella sequenziale, su dodici mesi di dati finti
+	 */
+	@Test
+	public void testParallelMonthsMatchSequential() {
+		AnalysisHandler sequential = newHandler(1), parallel = newHandler(4);
+		try {
+			for(int c = 0; c < 2; c++) {
+				List<MetaData> data = syntheticData("parallel" + c, 20000, 12, c);
+				assertSameAnalysis(sequential.getAnalysis(new ArrayList<>(data), 12),
+						parallel.getAnalysis(new ArrayList<>(data), 12));
+			}
+		} finally {
+			sequential.stopPool();
+			parallel.stopPool();
+		}
+	}
+
+	@Test
+	public void testCachedAnalysisRefreshesAfterChanges() throws InterruptedException {
+		String curator = "shisui", city = "" + ("sendai" + 12348).hashCode();
+		uh.addUser(curator, "password");
+		uh.userValidation(curator);
+		ch.createCity("sendai", 12348, curator, pos);
+		Analysis first = ah.getAnalysis(city, 2, false);
+		assertSame(first, ah.getAnalysis(city, 2, false));
+		ProtoPost data = new ProtoPost();
+		data.setText("");
+		data.setTitle("Cached");
+		data.setType(PostType.SOCIAL);
+		data.setPersistence(true);
+		data.setMultimediaData(empty);
+		ph.createPost(curator, pos, city, data);
+		assertSame(first, ah.getAnalysis(city, 2, false));
+		Analysis second = awaitNewAnalysis(city, 2, first);
+		assertEquals(second.getLastMonthsPublications()[1], first.getLastMonthsPublications()[1] + 1);
+		assertSame(second, ah.getAnalysis(city, 2, false));
+		ch.deleteCity(city);
+		uh.removeUser(curator);
+	}
+
+	/**
+	 * dopo un cambiamento l'analisi precedente viene ancora restituita
+	 * mentre la nuova si calcola in sottofondo: aspetta la nuova
+	 */
+	private Analysis awaitNewAnalysis(String city, int months, Analysis old) throws InterruptedException {
+		Analysis current = ah.getAnalysis(city, months, false);
+		for(int i = 0; i < 100 && current == old; i++) {
+			Thread.sleep(50);
+			current = ah.getAnalysis(city, months, false);
+		}
+		assertNotSame(old, current);
+		return current;
+	}
+
+	static void assertSameAnalysis(Analysis expected, Analysis actual) {
+		assertArrayEquals(expected.getLastMonthsPublications(), actual.getLastMonthsPublications());
+		assertArrayEquals(expected.getLastMonthsViews(), actual.getLastMonthsViews());
+		assertArrayEquals(expected.getLastMonthsVoteAverage(), actual.getLastMonthsVoteAverage());
+		assertArrayEquals(expected.getLastMonthsTopFiveContributors(), actual.getLastMonthsTopFiveContributors());
+		assertArrayEquals(expected.getLastMonthsTopFiveViewedContents(), actual.getLastMonthsTopFiveViewedContents());
+		assertArrayEquals(expected.getLastMonthsTopFiveLikedContents(), actual.getLastMonthsTopFiveLikedContents());
+	}
+
+	/**
+	 * crea un handler fuori dal contesto, per analizzare dati finti
+	 * senza toccare quello condiviso dagli altri test
+	 * @param parallelism thread che analizzano i mesi
+	 */
+	static AnalysisHandler newHandler(int parallelism) {
+		AnalysisHandler handler = new AnalysisHandler();
+		ReflectionTestUtils.setField(handler, "topSize", 5);
+		ReflectionTestUtils.setField(handler, "parallelism", parallelism);
+		handler.startPool();
+		return handler;
+	}
+
+	/**
+	 * genera dati finti distribuiti sugli ultimi mesi
+	 */
+	static List<MetaData> syntheticData(String cityId, int size, int months, long seed) {
+		Random random = new Random(seed);
+		LocalDateTime now = LocalDateTime.now();
+		List<MetaData> data = new ArrayList<>(size);
+		for(int i = 0; i < size; i++) {
+			LocalDateTime time = now.minusMinutes(random.nextInt(months * 30 * 24 * 60 - 60 * 24 * 3));
+			Score vote = new Score(1 + random.nextInt(400) / 100f, 1 + random.nextInt(50));
+			data.add(new Item(cityId + "." + i, cityId, "user" + random.nextInt(500), time,
+					random.nextInt(10000), vote, random.nextInt(10) == 0));
+		}
+		return data;
+	}
+
+	record Item(String id, String cityId, String author, LocalDateTime publicationTime,
+			int viewsCount, Score vote, boolean ofCity) implements MetaData {
+		public String getId() { return id; }
+		public String getCityId() { return cityId; }
+		public String getAuthor() { return author; }
+		public LocalDateTime getPublicationTime() { return publicationTime; }
+		public int getViewsCount() { return viewsCount; }
+		public Score getVote() { return vote; }
+		public boolean isOfCity() { return ofCity; }
+	}
+
 	private void createUsers() {
 		String userN;
 		System.out.print("Preparation for analysis tests: ");
@@ -15,6 +15,11 @@ import org.springframework.test.context.junit4.SpringRunner;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -71,5 +76,83 @@ public class FeedbackHandlerTests {
         uh.removeUser(user2);
         uh.removeUser(user3);
 	}
-	
+
+    @Test
+	public void testReplaceAndRemoveFeedback() {
+        String id = "" + ("kyoto"+12346).hashCode();
+        String user = "itachi";
+        uh.addUser(user, "password");
+        uh.userValidation(user);
+        String user2 = "kakashi";
+        uh.addUser(user2, "password");
+        uh.userValidation(user2);
+        ch.createCity("kyoto", 12346, user, new Position(1, 2));
+        Position pos = new Position(10, 10);
+        ProtoPost data1 = new ProtoPost();
+        data1.setTitle("parole");
+        data1.setText("blablabla");
+        data1.setType(PostType.SOCIAL);
+        data1.setPersistence(true);
+        data1.setMultimediaData(new ArrayList<>());
+        poh.createPost(user, pos, id, data1);
+        String postId = id + "." + pos.hashCode() + ".0";
+        assertEquals(0, fh.getFeedback(postId).getVoteCount());
+        assertTrue(fh.valute(user, postId, 1));
+        assertTrue(fh.valute(user2, postId, 3));
+        assertTrue(fh.valute(user, postId, 5));
+        assertEquals(4, fh.getFeedback(postId).getVoteAverage());
+        assertEquals(2, fh.getFeedback(postId).getVoteCount());
+        assertFalse(fh.valute(user, postId, 6));
+        assertEquals(2, fh.getFeedback(postId).getVoteCount());
+        fh.removeAllFeedbackOf(postId);
+        assertEquals(0, fh.getFeedback(postId).getVoteCount());
+        ch.deleteCity(id);
+        uh.removeUser(user);
+        uh.removeUser(user2);
+	}
+
+    @Test
+	public void testConcurrentVotes() throws InterruptedException, ExecutionException {
+        String id = "" + ("nara"+12347).hashCode();
+        String user = "hinata";
+        uh.addUser(user, "password");
+        uh.userValidation(user);
+        ch.createCity("nara", 12347, user, new Position(1, 2));
+        Position pos = new Position(10, 10);
+        ProtoPost data1 = new ProtoPost();
+        data1.setTitle("parole");
+        data1.setText("blablabla");
+        data1.setType(PostType.SOCIAL);
+        data1.setPersistence(true);
+        data1.setMultimediaData(new ArrayList<>());
+        poh.createPost(user, pos, id, data1);
+        String postId = id + "." + pos.hashCode() + ".0";
+        int threads = 8;
+        List<String> users = new ArrayList<>();
+        for(int t = 0; t < threads; t++) {
+            users.add("ninja" + t);
+            uh.addUser("ninja" + t, "password");
+            uh.userValidation("ninja" + t);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for(int vote : new int[] {1, 5}) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for(String u : users)
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return fh.valute(u, postId, vote);
+                }));
+            start.countDown();
+            for(Future<Boolean> result : results)
+                assertTrue(result.get());
+        }
+        executor.shutdown();
+        assertEquals(threads, fh.getFeedback(postId).getVoteCount());
+        assertEquals(5, fh.getFeedback(postId).getVoteAverage());
+        ch.deleteCity(id);
+        uh.removeUser(user);
+        users.forEach(uh::removeUser);
+	}
+
 }
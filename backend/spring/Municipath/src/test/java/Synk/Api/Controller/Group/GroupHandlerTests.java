@@ -7,7 +7,16 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -20,6 +29,7 @@ import Synk.Api.Model.Post.Position;
 import Synk.Api.Model.Post.PostType;
 import Synk.Api.View.ViewModel.ProtoGroup;
 import Synk.Api.View.ViewModel.ProtoPost;
+import jakarta.persistence.EntityManagerFactory;
 
 
 @RunWith(SpringRunner.class)
@@ -35,6 +45,8 @@ public class GroupHandlerTests {
     private PointHandler poh;
 	@Autowired
     private GroupHandler gh;
+	@Autowired
+	private EntityManagerFactory emf;
 
 	
 	@Test
@@ -157,7 +169,7 @@ public class GroupHandlerTests {
 	}
 	
 	@Test
-	void testEndingGroup() {
+	void testEndingGroup() throws InterruptedException, ExecutionException {
 		String id = "" + ("tokyo"+12345).hashCode(), user = "naruto";
 		uh.addUser(user, "password");
 		uh.userValidation(user);
@@ -200,10 +212,142 @@ public class GroupHandlerTests {
 		dataX.setEndTime( LocalDateTime.now().minusDays(3));
 		gh.createGroup(user, id, dataX);
 		assertEquals(gh.viewGroup("655823757.g.0").getId(), "655823757.g.0");
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<?> viewer = executor.submit(() -> {
+			long deadline = System.currentTimeMillis() + 10000;
+			while(gh.viewGroup("655823757.g.0") != null && System.currentTimeMillis() < deadline);
+		});
 		gh.checkEndingGroups();
+		viewer.get();
+		executor.shutdown();
 		assertEquals(gh.viewGroup("655823757.g.0"), null);
 		ch.deleteCity(id);
 		uh.removeUser(user);
 	}
 
+	/**
+	 * i gruppi di un post si cercano con una sola query,
+	 * qualunque sia il numero di gruppi salvati
+	 */
+	@Test
+	void testGroupsOfPostQueryCount() {
+		String id = "" + ("tokyo"+12345).hashCode(), id2 = "" + ("osaka"+54321).hashCode();
+		String user = "naruto", user2 = "sasuke";
+		uh.addUser(user, "password");
+		uh.userValidation(user);
+		uh.addUser(user2, "password");
+		uh.userValidation(user2);
+		ch.createCity("tokyo", 12345, user, new Position(1, 2));
+		ch.createCity("osaka", 54321, user2, new Position(3, 4));
+		List<String> posts = createTwoPosts(user, id), others = createTwoPosts(user2, id2);
+		ProtoGroup data = new ProtoGroup();
+		data.setTitle("un giretto in centro");
+		data.setPersistence(true);
+		data.setPosts(posts);
+		assertTrue(gh.createGroup(user, id, data));
+		data.setPosts(others);
+		Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+		stats.setStatisticsEnabled(true);
+		for(int round = 0; round < 2; round++) {
+			for(int i = 0; i < 40; i++)
+				assertTrue(gh.createGroup(user2, id2, data));
+			stats.clear();
+			for(int i = 0; i < 50; i++)
+				assertEquals(gh.viewGroupFrom(posts.get(0), user), List.of(id+".g.0"));
+			assertEquals(stats.getPrepareStatementCount(), 50);
+		}
+		stats.setStatisticsEnabled(false);
+		ch.deleteCity(id);
+		ch.deleteCity(id2);
+		uh.removeUser(user);
+		uh.removeUser(user2);
+	}
+
+	@Test
+	void testRemovePostFromGroups() {
+		String id = "" + ("tokyo"+12345).hashCode(), user = "naruto";
+		uh.addUser(user, "password");
+		uh.userValidation(user);
+		ch.createCity("tokyo", 12345, user, new Position(1, 2));
+		ProtoPost data1 = new ProtoPost();
+		data1.setTitle("statua");
+		data1.setText("è bella.");
+		data1.setType(PostType.TOURISTIC);
+		data1.setPersistence(true);
+		data1.setMultimediaData(new ArrayList<>());
+		poh.createPost(user, new Position(10, 10), id, data1);
+		poh.createPost(user, new Position(11, 10), id, data1);
+		poh.createPost(user, new Position(12, 10), id, data1);
+		City city = ch.getCity(id);
+		List<String> postIds = this.poh.getPoints(id, user).stream()
+				.filter(p -> !p.getPos().equals(city.getPos()))
+				.map(p -> p.getPosts().get(0).getId()).toList();
+		ProtoGroup dataX = new ProtoGroup();
+		dataX.setTitle("un giretto in centro");
+		dataX.setPersistence(true);
+		dataX.setPosts(postIds);
+		assertTrue(gh.createGroup(user, id, dataX));
+		dataX.setPosts(postIds.subList(1, 3));
+		assertTrue(gh.createGroup(user, id, dataX));
+		assertTrue(poh.deletePost(postIds.get(0), user));
+		assertEquals(new ArrayList<>(gh.viewGroup(id+".g.0").getPosts()), postIds.subList(1, 3));
+		assertEquals(gh.viewGroup(id+".g.1").getPosts().size(), 2);
+		assertTrue(poh.deletePost(postIds.get(1), user));
+		assertNull(gh.viewGroup(id+".g.0"));
+		assertNull(gh.viewGroup(id+".g.1"));
+		assertTrue(gh.viewGroupFrom(postIds.get(2), user).isEmpty());
+		ch.deleteCity(id);
+		uh.removeUser(user);
+	}
+
+	@Test
+	void testConcurrentGroupIds() throws InterruptedException, ExecutionException {
+		String id = "" + ("tokyo"+12345).hashCode(), user = "naruto";
+		uh.addUser(user, "password");
+		uh.userValidation(user);
+		ch.createCity("tokyo", 12345, user, new Position(1, 2));
+		ProtoGroup data = new ProtoGroup();
+		data.setTitle("un giretto in centro");
+		data.setPersistence(true);
+		data.setPosts(createTwoPosts(user, id));
+		int threads = 8, perThread = 10;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for(int t = 0; t < threads; t++)
+			results.add(executor.submit(() -> {
+				start.await();
+				boolean ok = true;
+				for(int i = 0; i < perThread; i++)
+					ok &= gh.createGroup(user, id, data);
+				return ok;
+			}));
+		start.countDown();
+		for(Future<Boolean> result : results)
+			assertTrue(result.get());
+		executor.shutdown();
+		Set<String> ids = gh.viewGroups(id, LocalDateTime.now().minusDays(1)).stream()
+				.map(g -> g.getId()).collect(Collectors.toSet());
+		assertEquals(ids.size(), threads * perThread);
+		for(int i = 0; i < threads * perThread; i++)
+			assertTrue(ids.contains(id + ".g." + i));
+		ch.deleteCity(id);
+		uh.removeUser(user);
+	}
+
+	private List<String> createTwoPosts(String user, String cityId) {
+		ProtoPost data = new ProtoPost();
+		data.setTitle("statua");
+		data.setText("è bella.");
+		data.setType(PostType.TOURISTIC);
+		data.setPersistence(true);
+		data.setMultimediaData(new ArrayList<>());
+		poh.createPost(user, new Position(10, 10), cityId, data);
+		poh.createPost(user, new Position(11, 10), cityId, data);
+		City city = ch.getCity(cityId);
+		return this.poh.getPoints(cityId, user).stream()
+				.filter(p -> !p.getPos().equals(city.getPos()))
+				.map(p -> p.getPosts().get(0).getId()).toList();
+	}
+
 }
@@ -1,5 +1,7 @@
 package Synk.Api.Controller.Post;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,14 +11,20 @@ import org.springframework.test.context.junit4.SpringRunner;
 import Synk.Api.Controller.ContentTimeModifier;
 import Synk.Api.Controller.ContentTimeModifier.TimeType;
 import Synk.Api.Controller.City.CityHandler;
+import Synk.Api.Controller.Feedback.FeedbackHandler;
+import Synk.Api.Controller.Group.GroupHandler;
 import Synk.Api.Controller.Pending.PendingHandler;
+import Synk.Api.Controller.SavedContent.SavedContentHandler;
 import Synk.Api.Controller.User.UserHandler;
+import Synk.Api.Model.Analysis.ContentData;
 import Synk.Api.Model.City.Role.Role;
 import Synk.Api.Model.Post.Point;
 import Synk.Api.Model.Post.Position;
 import Synk.Api.Model.Post.Post;
 import Synk.Api.Model.Post.PostType;
+import Synk.Api.View.ViewModel.ProtoGroup;
 import Synk.Api.View.ViewModel.ProtoPost;
+import jakarta.persistence.EntityManagerFactory;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -24,6 +32,11 @@ import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
@@ -40,6 +53,14 @@ public class PointHandlerTests {
     private PendingHandler peh;
 	@Autowired
 	private ContentTimeModifier timeModifier;
+	@Autowired
+	private EntityManagerFactory emf;
+	@Autowired
+	private FeedbackHandler fh;
+	@Autowired
+	private GroupHandler gh;
+	@Autowired
+	private SavedContentHandler sch;
 	
 	
 	@Test
@@ -196,6 +217,254 @@ public class PointHandlerTests {
 		uh.removeUser(user);
 	}
 	
+	@Test
+	void testEndingSweepRemovesAllData() {
+		String id = "" + ("tokyo"+12345).hashCode(), user = "naruto";
+		uh.addUser(user, "password");
+		uh.userValidation(user);
+		uh.addUser("sasuke", "password");
+		uh.userValidation("sasuke");
+		ch.createCity("tokyo", 12345, user, new Position(1, 2));
+		ProtoPost event = new ProtoPost();
+		event.setTitle("festa");
+		event.setText("blablabla");
+		event.setType(PostType.EVENT);
+		event.setPersistence(false);
+		event.setMultimediaData(new ArrayList<>());
+		event.setStartTime(LocalDateTime.now().minusDays(5));
+		event.setEndTime(LocalDateTime.now().minusDays(3));
+		ProtoPost social = new ProtoPost();
+		social.setTitle("parole");
+		social.setText("blablabla");
+		social.setType(PostType.SOCIAL);
+		social.setPersistence(true);
+		social.setMultimediaData(new ArrayList<>());
+		List<String> events = new ArrayList<>(), socials = new ArrayList<>();
+		for(int i = 0; i < 3; i++) {
+			assertTrue(poh.createPost(user, new Position(10, 10 * (i + 1)), id, event));
+			events.add(poh.getPoints(id, user).stream().filter(p -> p.getPos().getLat() == 10
+					&& p.getPos().getLng() == 10 * (events.size() + 1))
+					.findFirst().get().getPosts().get(0).getId());
+		}
+		for(int i = 0; i < 2; i++) {
+			assertTrue(poh.createPost(user, new Position(20, 10 * (i + 1)), id, social));
+			socials.add(poh.getPoints(id, user).stream().filter(p -> p.getPos().getLat() == 20
+					&& p.getPos().getLng() == 10 * (socials.size() + 1)).findFirst().get().getPosts().get(0).getId());
+		}
+		ProtoGroup onlyEvents = new ProtoGroup();
+		onlyEvents.setTitle("feste");
+		onlyEvents.setPersistence(true);
+		onlyEvents.setPosts(List.of(events.get(0), events.get(1)));
+		assertTrue(gh.createGroup(user, id, onlyEvents));
+		ProtoGroup mixed = new ProtoGroup();
+		mixed.setTitle("giro");
+		mixed.setPersistence(true);
+		mixed.setPosts(List.of(events.get(2), socials.get(0), socials.get(1)));
+		assertTrue(gh.createGroup(user, id, mixed));
+		assertTrue(fh.valute("sasuke", events.get(0), 4));
+		assertTrue(sch.saveContent("sasuke", events.get(1)));
+		assertEquals(poh.checkEndingPosts(), 3);
+		assertEquals(poh.getPoints(id, user).size(), 3);
+		events.forEach(e -> assertNull(poh.getPost(e)));
+		assertNull(gh.viewGroup(id + ".g.0"));
+		assertEquals(new ArrayList<>(gh.viewGroup(id + ".g.1").getPosts()), socials);
+		assertTrue(fh.getFeedback(events).values().stream().allMatch(v -> v.getVoteCount() == 0));
+		assertTrue(sch.getPartecipants(events.get(1)).isEmpty());
+		ch.deleteCity(id);
+		uh.removeUser(user);
+		uh.removeUser("sasuke");
+	}
+	
+	@Test
+	void testPostponedEventIsKept() {
+		String id = "" + ("tokyo"+12345).hashCode(), user = "naruto";
+		uh.addUser(user, "password");
+		uh.userValidation(user);
+		ch.createCity("tokyo", 12345, user, new Position(1, 2));
+		ProtoPost data1 = new ProtoPost();
+		data1.setTitle("parole");
+		data1.setText("blablabla");
+		data1.setType(PostType.EVENT);
+		data1.setPersistence(false);
+		data1.setMultimediaData(new ArrayList<>());
+		data1.setStartTime(LocalDateTime.now().minusDays(5));
+		data1.setEndTime(LocalDateTime.now().minusHours(1));
+		assertTrue(poh.createPost(user, new Position(10, 10), id, data1));
+		String postId = "655823757.75498433.0";
+		assertTrue(timeModifier.modifyTime(postId, 1, ChronoUnit.DAYS, TimeType.END));
+		poh.checkEndingPosts();
+		assertNotNull(poh.getPost(postId));
+		ch.deleteCity(id);
+		uh.removeUser(user);
+	}
+	
+	@Test
+	void testPointsInArea() {
+		String id = "" + ("tokyo"+12345).hashCode(), user = "naruto";
+		uh.addUser(user, "password");
+		uh.userValidation(user);
+		ch.createCity("tokyo", 12345, user, new Position(1, 2));
+		List<String> empty = new ArrayList<>();
+		ProtoPost data1 = new ProtoPost();
+		data1.setTitle("parole");
+		data1.setText("blablabla");
+		data1.setType(PostType.SOCIAL);
+		data1.setPersistence(true);
+		data1.setMultimediaData(empty);
+		assertTrue(poh.createPost(user, new Position(1.005, 2.005), id, data1));
+		assertTrue(poh.createPost(user, new Position(5, 5), id, data1));
+		List<Point> list = poh.getPoints(id, user, new Position(0.9, 1.9), new Position(1.1, 2.1));
+		assertEquals(list.size(), 2);
+		assertEquals(poh.getPoints(id, user, new Position(6, 6), new Position(4, 4)).size(), 1);
+		assertTrue(poh.createPost(user, new Position(1.05, 2.05), id, data1));
+		assertEquals(poh.getPoints(id, user, new Position(0, 0), new Position(10, 10)).size(), 4);
+		String postId = id + "." + new Position(1.05, 2.05) + ".0";
+		assertTrue(poh.deletePost(postId, user));
+		assertEquals(poh.getPoints(id, user, new Position(0, 0), new Position(10, 10)).size(), 3);
+		assertTrue(poh.getPoints(id, user, new Position(-10, -10), new Position(-5, -5)).isEmpty());
+		ch.deleteCity(id);
+		uh.removeUser(user);
+	}
+
+	/**
+	 * i punti di un comune si leggono con una query per i punti
+	 * e una per tutti i loro post, qualunque sia il loro numero
+	 */
+	@Test
+	void testPointsQueryCount() {
+		String id = "" + ("tokyo"+12345).hashCode(), user = "naruto";
+		uh.addUser(user, "password");
+		uh.userValidation(user);
+		ch.createCity("tokyo", 12345, user, new Position(1, 2));
+		List<String> empty = new ArrayList<>();
+		ProtoPost data1 = new ProtoPost();
+		data1.setTitle("parole");
+		data1.setText("blablabla");
+		data1.setType(PostType.SOCIAL);
+		data1.setPersistence(true);
+		data1.setMultimediaData(empty);
+		Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+		stats.setStatisticsEnabled(true);
+		for(int round = 0; round < 2; round++) {
+			for(int i = 0; i < 20; i++)
+				poh.createPost(user, new Position(10, 20 * round + i), id, data1);
+			stats.clear();
+			assertEquals(poh.getPoints(id, user).size(), 21 + 20 * round);
+			assertEquals(stats.getPrepareStatementCount(), 2);
+		}
+		stats.setStatisticsEnabled(false);
+		ch.deleteCity(id);
+		uh.removeUser(user);
+	}
+
+	/**
+	 * i post di un comune si leggono con una query per i post
+	 * e una per i voti di tutti, qualunque sia il loro numero
+	 */
+	@Test
+	void testPostsVotesQueryCount() {
+		String id = "" + ("tokyo"+12345).hashCode(), user = "naruto";
+		uh.addUser(user, "password");
+		uh.userValidation(user);
+		ch.createCity("tokyo", 12345, user, new Position(1, 2));
+		ProtoPost data1 = new ProtoPost();
+		data1.setTitle("parole");
+		data1.setText("blablabla");
+		data1.setType(PostType.SOCIAL);
+		data1.setPersistence(true);
+		data1.setMultimediaData(new ArrayList<>());
+		Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+		stats.setStatisticsEnabled(true);
+		LocalDateTime from = LocalDateTime.now().minusDays(1);
+		for(int round = 0; round < 2; round++) {
+			for(int i = 0; i < 10; i++)
+				poh.createPost(user, new Position(10, 10 * round + i), id, data1);
+			stats.clear();
+			List<Post> posts = poh.getPosts(id, from);
+			assertEquals(stats.getPrepareStatementCount(), 2);
+			assertEquals(posts.size(), 11 + 10 * round);
+			assertTrue(posts.stream().allMatch(p -> p.getVote() != null && p.getVote().getVoteCount() == 0));
+		}
+		stats.setStatisticsEnabled(false);
+		ch.deleteCity(id);
+		uh.removeUser(user);
+	}
+
+	@Test
+	void testDataForAnalysisIsFilteredByQuery() {
+		String id = "" + ("tokyo"+12345).hashCode(), user = "naruto";
+		uh.addUser(user, "password");
+		uh.userValidation(user);
+		uh.addUser("sasuke", "password");
+		uh.userValidation("sasuke");
+		ch.createCity("tokyo", 12345, user, new Position(1, 2));
+		ch.setRole("sasuke", id, Role.CONTR_AUTH);
+		ProtoPost data1 = new ProtoPost();
+		data1.setTitle("parole");
+		data1.setText("blablabla");
+		data1.setType(PostType.SOCIAL);
+		data1.setPersistence(true);
+		data1.setMultimediaData(new ArrayList<>());
+		assertTrue(poh.createPost(user, new Position(10, 10), id, data1));
+		assertTrue(poh.createPost("sasuke", new Position(20, 10), id, data1));
+		LocalDateTime now = LocalDateTime.now();
+		List<ContentData> all = poh.getDataForAnalysis(id, now.minusDays(1), now.plusDays(1), false);
+		assertEquals(all.size(), 3);
+		String staffPost = "655823757.75498433.0";
+		assertTrue(fh.valute("sasuke", staffPost, 4));
+		all = poh.getDataForAnalysis(id, now.minusDays(1), now.plusDays(1), false);
+		for(ContentData d : all) {
+			assertEquals(d.getVote().getVoteCount(), d.getId().equals(staffPost) ? 1 : 0);
+			assertEquals(d.isOfCity(), !d.getAuthor().equals("sasuke"));
+		}
+		assertEquals(all.stream().filter(d -> d.getId().equals(staffPost)).findFirst().get()
+				.getVote().getVoteAverage(), 4f);
+		List<ContentData> users = poh.getDataForAnalysis(id, now.minusDays(1), now.plusDays(1), true);
+		assertEquals(users.size(), 1);
+		assertEquals(users.get(0).getAuthor(), "sasuke");
+		assertTrue(poh.getDataForAnalysis(id, now.plusDays(1), now.plusDays(2), false).isEmpty());
+		ch.deleteCity(id);
+		uh.removeUser(user);
+		uh.removeUser("sasuke");
+	}
+
+	@Test
+	void testConcurrentPostsOnPoint() throws InterruptedException, ExecutionException {
+		String id = "" + ("tokyo"+12345).hashCode(), user = "naruto";
+		uh.addUser(user, "password");
+		uh.userValidation(user);
+		ch.createCity("tokyo", 12345, user, new Position(1, 2));
+		ProtoPost data1 = new ProtoPost();
+		data1.setTitle("piazza");
+		data1.setText("c'è il mercato.");
+		data1.setType(PostType.SOCIAL);
+		data1.setPersistence(true);
+		data1.setMultimediaData(new ArrayList<>());
+		Position pos = new Position(10, 10);
+		int threads = 8, perThread = 10;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for(int t = 0; t < threads; t++)
+			results.add(executor.submit(() -> {
+				start.await();
+				boolean ok = true;
+				for(int i = 0; i < perThread; i++)
+					ok &= poh.createPost(user, pos, id, data1);
+				return ok;
+			}));
+		start.countDown();
+		for(Future<Boolean> result : results)
+			assertTrue(result.get());
+		executor.shutdown();
+		Point point = poh.getPoints(id, user).stream()
+				.filter(p -> p.getPos().equals(pos)).findFirst().get();
+		assertEquals(point.getPosts().size(), threads * perThread);
+		assertEquals(point.getPosts().stream().map(p -> p.getId()).distinct().count(), threads * perThread);
+		ch.deleteCity(id);
+		uh.removeUser(user);
+	}
+
 	@Test
 	void testContest() {
 		String id = "" + ("tokyo"+12345).hashCode(), user = "naruto", user2 = "sasuke";
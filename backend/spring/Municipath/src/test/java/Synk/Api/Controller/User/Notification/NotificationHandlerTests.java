@@ -0,0 +1,211 @@
+package Synk.Api.Controller.User.Notification;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import Synk.Api.Controller.User.Follow.FollowHandler;
+import Synk.Api.Model.User.Notification.Broadcast;
+import Synk.Api.Model.User.Notification.Notification;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class NotificationHandlerTests {
+
+	@Autowired
+	private NotificationHandler nh;
+	@Autowired
+	private FollowHandler fh;
+
+	@Test
+	void testSmallAudience() {
+		List<String> receivers = List.of("naruto", "sasuke", "sakura");
+		nh.notifyEvent("kakashi", "nuovo contenuto", "tokyo.1.0", receivers);
+		for(String receiver : receivers) {
+			assertEquals(nh.getMyMessages(receiver).size(), 1);
+			nh.deleteUser(receiver);
+		}
+	}
+
+	@Test
+	void testLargeAudienceInBackground() throws InterruptedException {
+		List<String> receivers = IntStream.range(0, 2000).mapToObj(i -> "fan" + i).toList();
+		long start = System.currentTimeMillis();
+		nh.notifyEvent("kakashi", "nuovo contenuto", "tokyo.1.0", receivers);
+		nh.notifyEvent("kakashi", "nuovo contenuto", "tokyo.1.0", receivers);
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue(elapsed < 1000, "accodamento lento: " + elapsed + "ms");
+		for(int i = 0; i < 300 && nh.getPendingNotifications() > 0; i++)
+			Thread.sleep(100);
+		assertEquals(nh.getPendingNotifications(), 0);
+		assertEquals(nh.getMyMessages("fan0").size(), 2);
+		assertEquals(nh.getMyMessages("fan1999").size(), 2);
+		receivers.forEach(nh::deleteUser);
+	}
+
+	@Test
+	void testInboxPagesAndUnreadCount() {
+		for(int i = 0; i < 25; i++)
+			nh.notify("kakashi", "messaggio " + i, "tokyo.1." + i, "hinata");
+		assertEquals(nh.getUnreadCount("hinata", List.of()), 25);
+		List<Notification> all = new ArrayList<>();
+		List<Notification> page = nh.getMyMessages("hinata", List.of(), null, 10);
+		while(!page.isEmpty()) {
+			assertTrue(page.size() <= 10);
+			all.addAll(page);
+			Notification last = page.get(page.size() - 1);
+			page = nh.getMyMessages("hinata", List.of(), last.getId(), 10);
+		}
+		assertEquals(all.size(), 25);
+		assertEquals(all.stream().map(Notification::getId).distinct().count(), 25);
+		for(int i = 1; i < all.size(); i++)
+			assertTrue(all.get(i).getId().compareTo(all.get(i - 1).getId()) < 0);
+		nh.getMyMessage("hinata", all.get(0).getId());
+		nh.getMyMessage("hinata", all.get(0).getId());
+		assertEquals(nh.getUnreadCount("hinata", List.of()), 24);
+		nh.deleteUser("hinata");
+		assertEquals(nh.getUnreadCount("hinata", List.of()), 0);
+	}
+
+	@Test
+	void testCompactRemovesOnlyReadMessages() {
+		nh.notify("kakashi", "letto", "tokyo.2.0", "shikamaru");
+		nh.notify("kakashi", "non letto", "tokyo.2.1", "shikamaru");
+		Notification read = nh.getMyMessages("shikamaru", List.of(), null, 10).stream()
+				.filter(n -> n.getContentId().equals("tokyo.2.0")).findFirst().get();
+		nh.getMyMessage("shikamaru", read.getId());
+		ReflectionTestUtils.setField(nh, "retentionDays", -1);
+		try {
+			assertTrue(nh.compact() >= 1);
+		} finally {
+			ReflectionTestUtils.setField(nh, "retentionDays", 30);
+		}
+		List<Notification> left = nh.getMyMessages("shikamaru");
+		assertEquals(left.size(), 1);
+		assertEquals(left.get(0).getContentId(), "tokyo.2.1");
+		assertEquals(nh.getUnreadCount("shikamaru", List.of()), 1);
+		nh.deleteUser("shikamaru");
+	}
+
+	@Test
+	void testUnreadCountOnlyOfFollowedBroadcasts() {
+		fh.followCity("temari", "nara");
+		fh.followContributor("temari", "gaara");
+		nh.broadcast("nara", "primo", "nara.1.0", "c.nara");
+		nh.broadcast("nara", "secondo", "nara.1.1", "c.nara");
+		nh.broadcast("gaara", "terzo", "suna.1.0", "u.gaara");
+		List<String> sources = List.of("c.nara", "u.gaara");
+		assertEquals(nh.getUnreadCount("temari", sources), 3);
+		List<Notification> messages = nh.getMyMessages("temari", sources, null, 10);
+		messages.forEach(m -> nh.getMyMessage("temari", m.getId(), sources));
+		assertEquals(nh.getUnreadCount("temari", sources), 0);
+		nh.broadcast("nara", "quarto", "nara.1.2", "c.nara");
+		assertEquals(nh.getUnreadCount("temari", List.of("c.nara")), 1);
+		nh.deleteUser("temari");
+		fh.deleteUser("temari");
+	}
+
+	@Test
+	void testBroadcastsBeforeFollowingAreHidden() {
+		nh.broadcast("suna", "vecchio", "suna.2.0", "c.suna");
+		fh.followCity("kankuro", "suna");
+		List<String> sources = List.of("c.suna");
+		assertEquals(nh.getUnreadCount("kankuro", sources), 0);
+		assertTrue(nh.getMyMessages("kankuro", sources, null, 10).isEmpty());
+		nh.broadcast("suna", "nuovo", "suna.2.1", "c.suna");
+		List<Notification> messages = nh.getMyMessages("kankuro", sources, null, 10);
+		assertEquals(messages.size(), 1);
+		assertEquals(messages.get(0).getContentId(), "suna.2.1");
+		assertEquals(nh.getUnreadCount("kankuro", sources), 1);
+		nh.deleteUser("kankuro");
+		fh.deleteUser("kankuro");
+	}
+
+	@Test
+	void testConcurrentReadsCountOnce() throws InterruptedException {
+		nh.notify("kakashi", "messaggio", "tokyo.4.0", "neji");
+		nh.notify("kakashi", "messaggio", "tokyo.4.1", "neji");
+		String id = nh.getMyMessages("neji", List.of(), null, 10).get(0).getId();
+		List<Thread> threads = IntStream.range(0, 8).mapToObj(i ->
+				new Thread(() -> nh.getMyMessage("neji", id))).toList();
+		threads.forEach(Thread::start);
+		for(Thread thread : threads)
+			thread.join();
+		assertEquals(nh.getUnreadCount("neji", List.of()), 1);
+		nh.deleteUser("neji");
+	}
+
+	@Test
+	void testSameContentIdsDoNotCollide() throws InterruptedException {
+		List<String> receivers = IntStream.range(0, 40).mapToObj(i -> "kiba").toList();
+		List<Thread> threads = IntStream.range(0, 4).mapToObj(i ->
+				new Thread(() -> nh.notifyEvent("kakashi", "stesso contenuto", "tokyo.3.0", receivers))).toList();
+		threads.forEach(Thread::start);
+		for(Thread thread : threads)
+			thread.join();
+		List<Notification> messages = nh.getMyMessages("kiba", List.of(), null, 200);
+		assertEquals(messages.size(), 160);
+		assertEquals(nh.getUnreadCount("kiba", List.of()), 160);
+		nh.deleteUser("kiba");
+	}
+
+	@Test
+	void testStreamDeliversAndDropsClosedConnections() throws InterruptedException {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		NotificationHub hub = new NotificationHub(10, 3600, 60000, 1, registry);
+		try {
+			SseEmitter emitter = hub.subscribe("ino", List.of("c.tokyo"));
+			hub.subscribe("shino", List.of());
+			assertEquals(hub.getConnections(), 2);
+			hub.publish(new Notification("kakashi", "uno", "tokyo.4.0", "ino"));
+			hub.publish(new Notification("kakashi", "due", "tokyo.4.1", "ino"));
+			hub.publish(new Broadcast("kakashi", "tre", "tokyo.4.2", "c.tokyo"));
+			hub.publish(new Notification("kakashi", "altro", "tokyo.4.3", "choji"));
+			for(int i = 0; i < 50 && registry.counter("municipath.notifications.streamed").count() < 3; i++)
+				Thread.sleep(20);
+			assertEquals(registry.counter("municipath.notifications.streamed").count(), 3);
+			emitter.complete();
+			hub.publish(new Notification("kakashi", "quattro", "tokyo.4.4", "ino"));
+			for(int i = 0; i < 50 && hub.getConnections() > 1; i++)
+				Thread.sleep(20);
+			assertEquals(hub.getConnections(), 1);
+		} finally {
+			hub.stop();
+		}
+	}
+
+	@Test
+	void testStreamFollowsNewSources() throws InterruptedException {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		NotificationHub hub = new NotificationHub(10, 3600, 60000, 1, registry);
+		try {
+			hub.subscribe("sai", List.of());
+			hub.follow("sai", "c.kyoto");
+			hub.publish(new Broadcast("kakashi", "uno", "kyoto.1.0", "c.kyoto"));
+			for(int i = 0; i < 50 && registry.counter("municipath.notifications.streamed").count() < 1; i++)
+				Thread.sleep(20);
+			assertEquals(registry.counter("municipath.notifications.streamed").count(), 1);
+			hub.unfollow("sai", "c.kyoto");
+			hub.publish(new Broadcast("kakashi", "due", "kyoto.1.1", "c.kyoto"));
+			hub.publish(new Notification("kakashi", "tre", "kyoto.1.2", "sai"));
+			for(int i = 0; i < 50 && registry.counter("municipath.notifications.streamed").count() < 2; i++)
+				Thread.sleep(20);
+			Thread.sleep(100);
+			assertEquals(registry.counter("municipath.notifications.streamed").count(), 2);
+		} finally {
+			hub.stop();
+		}
+	}
+
+}
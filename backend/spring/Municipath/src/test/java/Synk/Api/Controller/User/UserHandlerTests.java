@@ -12,6 +12,7 @@ import Synk.Api.Model.City.City;
 import Synk.Api.Model.City.Role.Role;
 import Synk.Api.Model.Post.Position;
 import Synk.Api.Model.Post.PostType;
+import Synk.Api.Model.User.Notification.Notification;
 import Synk.Api.View.ViewModel.ProtoPost;
 
 import org.junit.jupiter.api.Test;
@@ -19,6 +20,7 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 
 @RunWith(SpringRunner.class)
@@ -207,6 +209,43 @@ public class UserHandlerTests {
 		uh.removeUser(user3);
 	}
 	
+	@Test
+	public void testBroadcastNotification() {
+		String cityId = "" + ("tokyo"+12345).hashCode();
+		String user = "naruto", user2 = "sasuke", user3 = "sakura", user4 = "hinata";
+		for(String u : List.of(user, user2, user3, user4)) {
+			uh.addUser(u, "password");
+			uh.userValidation(u);
+		}
+		ch.createCity("tokyo", 12345, user, new Position(1, 2));
+		uh.followCity(user2, cityId);
+		uh.followCity(user3, cityId);
+		ReflectionTestUtils.setField(uh, "broadcastThreshold", 1L);
+		try {
+			ProtoPost data1 = new ProtoPost();
+			data1.setTitle("parole");
+			data1.setText("blablabla");
+			data1.setType(PostType.SOCIAL);
+			data1.setPersistence(true);
+			data1.setMultimediaData(new ArrayList<>());
+			poh.createPost(user, new Position(10, 10), cityId, data1);
+		} finally {
+			ReflectionTestUtils.setField(uh, "broadcastThreshold", 1000L);
+		}
+		List<Notification> messages = uh.getMyMessages(user2);
+		assertEquals(messages.size(), 1);
+		assertFalse(messages.get(0).isRead());
+		assertEquals(uh.getMyMessages(user3).size(), 1);
+		assertTrue(uh.getMyMessages(user4).isEmpty());
+		assertNull(uh.getMyMessage(user4, messages.get(0).getId()));
+		assertTrue(uh.getMyMessage(user2, messages.get(0).getId()).isRead());
+		assertTrue(uh.getMyMessages(user2).get(0).isRead());
+		assertFalse(uh.getMyMessages(user3).get(0).isRead());
+		ch.deleteCity(cityId);
+		for(String u : List.of(user, user2, user3, user4))
+			uh.removeUser(u);
+	}
+	
 	@Test
 	void testNotification() {
 		String cityId = "" + ("tokyo"+12345).hashCode();
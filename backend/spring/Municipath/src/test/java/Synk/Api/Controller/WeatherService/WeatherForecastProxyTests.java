@@ -0,0 +1,85 @@
+package Synk.Api.Controller.WeatherService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import Synk.Api.Model.Post.Position;
+
+public class WeatherForecastProxyTests {
+
+	private final LocalDateTime time = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	@Test
+	void testSingleFlight() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		WeatherForecastProxy proxy = new WeatherForecastProxy((pos, t) -> {
+			calls.incrementAndGet();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "sun";
+		}, 60000, 100);
+		ExecutorService pool = Executors.newFixedThreadPool(16);
+		List<Future<String>> results = new ArrayList<>();
+		for(int i = 0; i < 16; i++)
+			results.add(pool.submit(() -> proxy.getWeather(new Position(43.1234, 13.5678), time)));
+		Thread.sleep(200);
+		release.countDown();
+		for(Future<String> result : results)
+			assertEquals(result.get(5, TimeUnit.SECONDS), "sun");
+		pool.shutdown();
+		assertEquals(calls.get(), 1);
+		assertEquals(proxy.getMisses(), 1);
+		assertEquals(proxy.getHits(), 15);
+	}
+
+	@Test
+	void testCells() {
+		AtomicInteger calls = new AtomicInteger();
+		WeatherForecastProxy proxy = new WeatherForecastProxy((pos, t) -> "" + calls.incrementAndGet(), 60000, 100);
+		assertEquals(proxy.getWeather(new Position(43.1234, 13.5678), time), "1");
+		assertEquals(proxy.getWeather(new Position(43.1231, 13.5679), time.plusHours(1)), "1");
+		assertEquals(proxy.getWeather(new Position(43.1250, 13.5678), time), "2");
+		assertEquals(proxy.getWeather(new Position(43.1234, 13.5678), time.plusHours(3)), "3");
+	}
+
+	@Test
+	void testExpirationAndFailure() {
+		AtomicInteger calls = new AtomicInteger();
+		WeatherForecastProxy expiring = new WeatherForecastProxy((pos, t) -> "" + calls.incrementAndGet(), 0, 100);
+		assertEquals(expiring.getWeather(new Position(1, 2), time), "1");
+		assertEquals(expiring.getWeather(new Position(1, 2), time), "2");
+		WeatherForecastProxy failing = new WeatherForecastProxy((pos, t) -> {
+			if(calls.incrementAndGet() < 4)
+				throw new IllegalStateException();
+			return "rain";
+		}, 60000, 100);
+		assertEquals(failing.getWeather(new Position(1, 2), time), "?");
+		assertEquals(failing.getWeather(new Position(1, 2), time), "rain");
+		assertEquals(failing.getWeather(new Position(1, 2), time), "rain");
+	}
+
+	@Test
+	void testEviction() {
+		WeatherForecastProxy proxy = new WeatherForecastProxy((pos, t) -> "sun", 60000, 50);
+		for(int i = 0; i < 200; i++)
+			proxy.getWeather(new Position(i, i), time);
+		assertTrue(proxy.size() <= 50);
+		assertTrue(proxy.getEvictions() > 0);
+	}
+
+}
@@ -0,0 +1,86 @@
+package Synk.Api.Controller.WeatherService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import Synk.Api.Model.Post.Position;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class WeatherForecastTests {
+
+	private WeatherStubServer stub;
+
+	@BeforeEach
+	void startStub() throws IOException {
+		this.stub = new WeatherStubServer(0);
+	}
+
+	@AfterEach
+	void stopStub() {
+		this.stub.stop();
+	}
+
+	@Test
+	void testWholeForecastReuse() {
+		WeatherForecast forecast = new WeatherForecast(stub.getUrl(), 60000);
+		LocalDateTime now = LocalDateTime.now().withMinute(0);
+		Position pos = new Position(43.1234, 13.5678);
+		for(int h = 0; h < 48; h++)
+			assertNotEquals(forecast.getWeather(pos, now.plusHours(h)), "?");
+		assertNotEquals(forecast.getWeather(new Position(43.1201, 13.5702), now), "?");
+		assertEquals(forecast.getUpstreamCalls(), 1);
+		assertEquals(stub.getRequests(), 1);
+		assertNotEquals(forecast.getWeather(new Position(44, 12), now), "?");
+		assertEquals(stub.getRequests(), 2);
+		assertEquals(forecast.getWeather(pos, now.plusDays(5)), "?");
+		assertEquals(forecast.getWeather(pos, now.minusDays(1)), "?");
+		assertEquals(stub.getRequests(), 2);
+	}
+
+	@Test
+	void testExpiredForecast() {
+		WeatherForecast forecast = new WeatherForecast(stub.getUrl(), 0);
+		Position pos = new Position(43.1234, 13.5678);
+		forecast.getWeather(pos, LocalDateTime.now());
+		forecast.getWeather(pos, LocalDateTime.now());
+		assertEquals(stub.getRequests(), 2);
+	}
+
+	@Test
+	void testUnreachableService() {
+		String url = stub.getUrl();
+		stub.stop();
+		WeatherForecastProxy proxy = new WeatherForecastProxy(new WeatherForecast(url, 60000), 60000, 100);
+		assertEquals(proxy.getWeather(new Position(1, 2), LocalDateTime.now()), "?");
+	}
+
+	@Test
+	void testWeatherWithinBudget() throws IOException, InterruptedException {
+		WeatherStubServer slow = new WeatherStubServer(500);
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		WeatherForecastProxy proxy = new WeatherForecastProxy(new WeatherForecast(slow.getUrl(), 60000), 60000, 100);
+		AsyncWeatherForecast async = new AsyncWeatherForecast(proxy, 50, 2, 10, registry);
+		try {
+			Position pos = new Position(43.1234, 13.5678);
+			LocalDateTime now = LocalDateTime.now();
+			long start = System.currentTimeMillis();
+			assertEquals(async.getWeather(pos, now), "?");
+			assertTrue(System.currentTimeMillis() - start < 400);
+			assertEquals(registry.counter("municipath.weather.enrichment.timeouts").count(), 1);
+			Thread.sleep(1000);
+			assertNotEquals(async.getWeather(pos, now), "?");
+			assertEquals(slow.getRequests(), 1);
+			assertEquals(registry.timer("municipath.weather.enrichment").count(), 2);
+		} finally {
+			async.shutdown();
+			slow.stop();
+		}
+	}
+
+}